@@ -0,0 +1,63 @@
+package com.idcom4.benchmarks;
+
+import com.idcom4.cpu.components.ALU_16;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    ALU_16.Compute for each operation and comparison, over random operands.
+    One operation is one computation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AluBenchmark {
+
+    private static final int COMPUTATIONS = 1024;
+    // comparisons are requested with this opcode bit
+    private static final int COMPARISON = 0b00010000;
+
+    @Param({
+            "ADD", "SUBSTRACT", "DIVIDE", "MULTIPLY", "MODULO", "AND", "OR", "XOR", "LEFT_SHIFT", "RIGHT_SHIFT",
+            "EQUAL", "LESS", "LESS_OR_EQUAL", "GREATER", "GREATER_OR_EQUAL"
+    })
+    public String operation;
+
+    private final ALU_16 ALU = new ALU_16(Programs.CONTEXT);
+    private short opcode;
+    private final short[] inputs0 = new short[COMPUTATIONS];
+    private final short[] inputs1 = new short[COMPUTATIONS];
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        this.opcode = OpcodeOf(this.operation);
+
+        Random random = new Random(42);
+        for (int i = 0; i < COMPUTATIONS; i++) {
+            this.inputs0[i] = (short) random.nextInt();
+            this.inputs1[i] = (short) random.nextInt();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMPUTATIONS)
+    public void compute(Blackhole blackhole) {
+        for (int i = 0; i < COMPUTATIONS; i++) {
+            blackhole.consume(this.ALU.Compute(this.opcode, this.inputs0[i], this.inputs1[i]));
+        }
+    }
+
+    private static short OpcodeOf(String name) {
+        for (ALU_16.Operations operation : ALU_16.Operations.values()) {
+            if (operation.name().equals(name)) return operation.code;
+        }
+
+        return (short) (ALU_16.Comparisons.valueOf(name).code | COMPARISON);
+    }
+}
@@ -0,0 +1,25 @@
+package com.idcom4.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+    Runs the benchmarks with the GC profiler, so each result comes with its allocation rate (gc.alloc.rate.norm).
+    Takes the usual JMH arguments, like a benchmark name filter:
+
+    java -jar target/benchmarks.jar CpuBenchmark -p engine=jit
+ */
+public class BenchmarksMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
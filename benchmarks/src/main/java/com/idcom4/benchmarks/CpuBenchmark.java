@@ -0,0 +1,69 @@
+package com.idcom4.benchmarks;
+
+import com.idcom4.cpu.CPU_16;
+import com.idcom4.cpu.CPU_16.EExecutionEngines;
+import com.idcom4.cpu.components.IIn_16;
+import com.idcom4.cpu.components.IOut_16;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Instruction throughput of the CPU: one operation is one guest instruction,
+    so the scores, in operations per microsecond, are MIPS.
+
+    - onClock:  one instruction per call, the interpreter's worst case (no fusion, no JIT)
+    - run:      batched execution with the selected engine
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuBenchmark {
+
+    private static final int INSTRUCTIONS = 10_000;
+
+    @Param({ "fibonacci", "alu", "memory", "stack", "bulk" })
+    public String program;
+
+    @Param({ "interpreter", "jit" })
+    public String engine;
+
+    // relative to the benchmarks directory
+    @Param({ "../ROM.mem" })
+    public String romFile;
+
+    private CPU_16 cpu;
+
+    @Setup(Level.Trial)
+    public void Setup(Blackhole blackhole) {
+        int[] inputIndex = { 0 };
+        IIn_16 input = () -> (short) Programs.INPUT.charAt(inputIndex[0]++ % Programs.INPUT.length());
+        IOut_16 output = blackhole::consume;
+
+        this.cpu = new CPU_16(Programs.CONTEXT, input, output, Programs.Load(this.program, this.romFile));
+        this.cpu.SetExecutionEngine(EExecutionEngines.fromName(this.engine));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void onClock() {
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            this.cpu.OnClock();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public long run() {
+        long cycles = 0;
+        while (cycles < INSTRUCTIONS) {
+            cycles += this.cpu.Run(INSTRUCTIONS - cycles).cycles();
+        }
+
+        return cycles;
+    }
+}
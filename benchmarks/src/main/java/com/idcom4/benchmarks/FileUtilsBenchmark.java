@@ -0,0 +1,58 @@
+package com.idcom4.benchmarks;
+
+import com.idcom4.utils.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Reading and writing memory images, from 64K words (a full 16 bits address space) to 16M words.
+    One operation is one whole image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileUtilsBenchmark {
+
+    @Param({ "65536", "1048576", "16777216" })
+    public int size;
+
+    private short[] image;
+    private File readFile;
+    private File writeFile;
+
+    @Setup(Level.Trial)
+    public void Setup() throws IOException {
+        this.image = new short[this.size];
+        Random random = new Random(42);
+        for (int i = 0; i < this.image.length; i++) {
+            this.image[i] = (short) random.nextInt();
+        }
+
+        this.readFile = File.createTempFile("id16bit-read", ".mem");
+        this.writeFile = File.createTempFile("id16bit-write", ".mem");
+        FileUtils.WriteFileShorts(this.readFile.getPath(), this.image);
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        this.readFile.delete();
+        this.writeFile.delete();
+    }
+
+    @Benchmark
+    public short[] readFileShorts() {
+        return FileUtils.ReadFileShorts(this.readFile.getPath());
+    }
+
+    @Benchmark
+    public void writeFileShorts() {
+        FileUtils.WriteFileShorts(this.writeFile.getPath(), this.image);
+    }
+}
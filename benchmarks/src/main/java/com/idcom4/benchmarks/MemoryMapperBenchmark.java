@@ -0,0 +1,100 @@
+package com.idcom4.benchmarks;
+
+import com.idcom4.cpu.components.HeapStorage_16;
+import com.idcom4.cpu.components.IMemoryStorage_16;
+import com.idcom4.cpu.components.MemoryBlock_16;
+import com.idcom4.cpu.components.MemoryMapper_16;
+import com.idcom4.cpu.components.MmioBlock_16;
+import com.idcom4.cpu.components.OffHeapStorage_16;
+import com.idcom4.cpu.components.SparseStorage_16;
+import com.idcom4.devices.IDevice_16;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Memory accesses through the mapper, spread over random addresses of 64K words
+    split into 1, 4, 32 or 256 equal blocks, on the heap, off heap, sparse, or devices holding an array
+    (the cost of a device access being the one of the device). One operation is one access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryMapperBenchmark {
+
+    private static final int MEMORY_SIZE = 0x10000;
+    private static final int ACCESSES = 1024;
+
+    @Param({ "1", "4", "32", "256" })
+    public int blocks;
+
+    @Param({ "heap", "offheap", "sparse", "mmio" })
+    public String backend;
+
+    private MemoryMapper_16 memoryMapper;
+    private final int[] addresses = new int[ACCESSES];
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        MemoryBlock_16[] memoryBlocks = new MemoryBlock_16[this.blocks];
+        for (int i = 0; i < memoryBlocks.length; i++) {
+            if (this.backend.equals("mmio")) {
+                memoryBlocks[i] = new MmioBlock_16(Programs.CONTEXT, "device" + i, MEMORY_SIZE / this.blocks, new ArrayDevice(MEMORY_SIZE / this.blocks));
+                continue;
+            }
+
+            IMemoryStorage_16 storage = switch (this.backend) {
+                case "offheap" -> new OffHeapStorage_16(MEMORY_SIZE / this.blocks);
+                case "sparse" -> new SparseStorage_16(MEMORY_SIZE / this.blocks);
+                default -> new HeapStorage_16(MEMORY_SIZE / this.blocks);
+            };
+            memoryBlocks[i] = new MemoryBlock_16(Programs.CONTEXT, "block" + i, false, storage);
+        }
+        this.memoryMapper = new MemoryMapper_16(Programs.CONTEXT, memoryBlocks);
+
+        Random random = new Random(42);
+        for (int i = 0; i < ACCESSES; i++) {
+            this.addresses[i] = random.nextInt(MEMORY_SIZE);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void getValue(Blackhole blackhole) {
+        for (int address : this.addresses) {
+            blackhole.consume(this.memoryMapper.GetValue(address));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void setValue() {
+        for (int address : this.addresses) {
+            this.memoryMapper.SetValue(address, (short) address);
+        }
+    }
+
+    private static class ArrayDevice implements IDevice_16 {
+
+        private final short[] registers;
+
+        ArrayDevice(int size) {
+            this.registers = new short[size];
+        }
+
+        @Override
+        public short Read(int offset) {
+            return this.registers[offset];
+        }
+
+        @Override
+        public void Write(int offset, short value) {
+            this.registers[offset] = value;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.idcom4.benchmarks;
+
+import com.idcom4.Context;
+import com.idcom4.cpu.components.MemoryBlock_16;
+import com.idcom4.cpu.components.MemoryMapper_16;
+import com.idcom4.utils.FileUtils;
+import com.idcom4.utils.logger.ConsoleLogger;
+
+/*
+    Guest programs for the CPU benchmarks, each one an endless loop starting at MEM_START (0x19).
+    The synthetic ones are written opcode word by opcode word, see the README for the encoding.
+ */
+final class Programs {
+
+    static final int MEMORY_SIZE = 0x1000;
+    // the fibonacci program keeps asking for a number, always this one
+    static final String INPUT = "24\n";
+
+    private static final int MEM_START = 0x19;
+
+    // opcode words
+    private static final int ADD = 0x1;
+    private static final int MULTIPLY = 0x4;
+    private static final int MODULO = 0x5;
+    private static final int XOR = 0x8;
+    private static final int MOVE = 0x20;
+    private static final int MEMORY_COPY = 0x24;
+    private static final int MEMORY_SET = 0x25;
+    private static final int MEMORY_COMPARE = 0x26;
+    private static final int P0_INT_LIT = 0x8000;
+    private static final int P1_INT_LIT = 0x4000;
+    private static final int P1_POINTER = 0x1000;
+    private static final int P0_MEMORY = 0x0800;
+    private static final int P1_MEMORY = 0x0400;
+
+    // static addresses
+    private static final int R0 = 0x0;
+    private static final int R1 = 0x1;
+    private static final int R2 = 0x2;
+    private static final int ACCU0 = 0x4;
+    private static final int EXPTR = 0x8;
+    private static final int STACK = 0xb;
+
+    private static final int[] ALU = {
+            ADD | P1_INT_LIT,       R0,         1,          // R0 + 1
+            MOVE,                   ACCU0,      R0,
+            MULTIPLY | P1_INT_LIT,  R0,         3,          // R0 * 3
+            XOR,                    ACCU0,      R1,         // ^ R1
+            MOVE,                   ACCU0,      R1,
+            MODULO | P1_INT_LIT,    R1,         7,          // R1 % 7
+            MOVE | P0_INT_LIT,      MEM_START,  EXPTR,      // loop
+    };
+
+    private static final int[] MEMORY = {
+            MOVE | P0_INT_LIT,          0x200,  R2,         // R2 = 0x200
+            MOVE | P0_MEMORY,           0x100,  R0,         // R0 = [0x100]
+            ADD | P1_INT_LIT,           R0,     1,
+            MOVE | P1_MEMORY,           ACCU0,  0x100,      // [0x100] = R0 + 1
+            MOVE | P1_POINTER,          R0,     R2,         // [R2] = R0
+            MOVE | P0_MEMORY | P1_MEMORY, 0x101, 0x102,     // [0x102] = [0x101]
+            MOVE | P0_INT_LIT,          MEM_START + 3, EXPTR, // loop, after the R2 setup
+    };
+
+    private static final int[] STACK_HEAVY = {
+            MOVE | P0_INT_LIT,  1,          STACK,          // push 1
+            MOVE,               R0,         STACK,          // push R0
+            MOVE,               STACK,      R1,             // pop R1
+            MOVE,               STACK,      R2,             // pop R2
+            ADD,                R1,         R2,
+            MOVE,               ACCU0,      R0,             // R0 = R1 + R2
+            MOVE | P0_INT_LIT,  MEM_START,  EXPTR,          // loop
+    };
+
+    // each bulk instruction goes through BULK_LENGTH values
+    private static final int BULK_LENGTH = 0x100;
+
+    private static final int[] BULK = {
+            MOVE | P0_INT_LIT,  0,          R0,
+            MOVE | P0_INT_LIT,  0x400,      R1,
+            MOVE | P0_INT_LIT,  BULK_LENGTH, R2,
+            MEMORY_SET,         0,          0,              // [0x400..0x500] = 0
+            MOVE | P0_INT_LIT,  0x400,      R0,
+            MOVE | P0_INT_LIT,  0x600,      R1,
+            MEMORY_COPY,        0,          0,              // [0x600..0x700] = [0x400..0x500]
+            MEMORY_COMPARE,     0,          0,
+            MOVE | P0_INT_LIT,  MEM_START,  EXPTR,          // loop
+    };
+
+    // the benchmarks don't log
+    static final Context CONTEXT = CreateContext();
+
+    private Programs() {}
+
+    private static Context CreateContext() {
+        ConsoleLogger logger = new ConsoleLogger();
+        logger.disable();
+        return new Context(logger);
+    }
+
+    // name: "fibonacci" (the bundled ROM), "alu", "memory", "stack" or "bulk"
+    static MemoryMapper_16 Load(String name, String romFile) {
+        short[] content = switch (name) {
+            case "fibonacci" -> FileUtils.ReadFileShorts(romFile);
+            case "alu" -> Place(ALU);
+            case "memory" -> Place(MEMORY);
+            case "stack" -> Place(STACK_HEAVY);
+            case "bulk" -> Place(BULK);
+            default -> throw new IllegalArgumentException("Unknown program: " + name);
+        };
+
+        return new MemoryMapper_16(CONTEXT, new MemoryBlock_16[] { new MemoryBlock_16(CONTEXT, "RAM", false, content) });
+    }
+
+    private static short[] Place(int[] program) {
+        short[] memory = new short[MEMORY_SIZE];
+        for (int i = 0; i < program.length; i++) {
+            memory[MEM_START + i] = (short) program[i];
+        }
+
+        return memory;
+    }
+}
@@ -25,6 +25,9 @@ buildProject() {
     echo "🔨 Compiling ..."
     javac -cp "$OUT_DIR:$(cat $BUILD_DIR/cp.txt)" -d "$OUT_DIR" @"$BUILD_DIR/sources.txt"
 
+    echo "📄 Copying resources ..."
+    cp -r src/main/resources/. "$OUT_DIR"
+
     echo "🔥 Done !"
 }
 
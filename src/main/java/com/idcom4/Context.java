@@ -1,22 +1,29 @@
 package com.idcom4;
 
-import com.idcom4.exceptions.IDException;
+import com.idcom4.devices.DeviceRegistry;
 import com.idcom4.utils.logger.ILogger;
 
-public class Context {
+/*
+    What a VM shares with its host, one per Id16Bit instance: every component logs through the context it was built with,
+    and the memory creates its devices from its registry, so several VMs can run side by side in the same JVM,
+    each one with its own logger and devices.
 
-    public static Context INSTANCE;
+    Metrics aren't part of it: each producer (OpcodeStats_16, the profilers, Fleet) is already an instance of its own.
+    The thread running the millisecond timers is shared by every VM (see TimerDevice_16): it holds no state of a VM.
+ */
+public class Context {
 
     public final ILogger logger;
+    public final DeviceRegistry devices;
 
-    private Context(ILogger logger) {
-        this.logger = logger;
+    // the devices of the class path
+    public Context(ILogger logger) {
+        this(logger, DeviceRegistry.FromClassPath());
     }
 
-    public static void initContext(ILogger logger) throws IDException {
-        if (INSTANCE != null) throw new IDException("Context already initialized");
-
-        INSTANCE = new Context(logger);
+    public Context(ILogger logger, DeviceRegistry devices) {
+        this.logger = logger;
+        this.devices = devices;
     }
 
 }
@@ -1,61 +1,245 @@
 package com.idcom4;
 
 import com.idcom4.bios.BIOS;
+import com.idcom4.clock.ClockGovernor;
 import com.idcom4.cpu.CPU_16;
+import com.idcom4.cpu.CPU_16.EExecutionEngines;
+import com.idcom4.cpu.CPU_16.EStopReasons;
+import com.idcom4.cpu.IProfiler_16;
+import com.idcom4.cpu.OpcodeStats_16;
+import com.idcom4.cpu.components.IIn_16;
+import com.idcom4.cpu.components.IOut_16;
 import com.idcom4.cpu.components.MemoryMapper_16;
+import com.idcom4.cpu.components.Stack_16;
+import com.idcom4.trace.TraceRecorder;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+
+/*
+    Runs each core on its own thread, started on the first Start or StepForward,
+    the first core being the one instrumented (tracing, opcode statistics, profiling).
+    A core waiting for an interrupt (see CPU_16.EStopReasons.WAIT) sleeps until one is raised.
+    Every component logs through the given context, so any amount of instances can live in the same JVM,
+    each one being disposed of with Close.
+ */
 public class Id16Bit {
 
-    private final CPU_16 CPU;
-    private boolean running = false;
-    private boolean stepForward = false;
-    private int msSteps = 0;
+    private final Context context;
+    private final CPU_16[] cores;
+    // one per core, null until started
+    private final Thread[] runningThreads;
+    private boolean started = false;
+    private volatile boolean closed = false;
+    private volatile double clockRate = 0;
+    private volatile boolean running = false;
+    // each core runs one instruction per step forward
+    private final AtomicLong steps = new AtomicLong();
+    // set while a safepoint is requested: the cores count it down once stopped, then wait for the release
+    private volatile CountDownLatch safepoint = null;
+    private CountDownLatch safepointRelease;
+
+    public Id16Bit(Context context, MemoryMapper_16 memoryMapper, BIOS bios) {
+        this(context, memoryMapper, bios, 1);
+    }
+
+    public Id16Bit(Context context, MemoryMapper_16 memoryMapper, BIOS bios, int coreCount) {
+        this(context, memoryMapper, bios, coreCount, Stack_16.MAX_SIZE);
+    }
+
+    public Id16Bit(Context context, MemoryMapper_16 memoryMapper, BIOS bios, int coreCount, int stackSize) {
+        // the BIOS output isn't thread-safe, the cores take turns
+        this(context, memoryMapper, bios.IN, coreCount == 1 ? bios.OUT : (short value) -> {
+            synchronized (bios) {
+                bios.OUT.SetValue(value);
+            }
+        }, coreCount, stackSize);
+    }
+
+    // for embedding, without the console BIOS: with several cores, the IO is used from all of their threads
+    public Id16Bit(Context context, MemoryMapper_16 memoryMapper, IIn_16 input, IOut_16 output, int coreCount) {
+        this(context, memoryMapper, input, output, coreCount, Stack_16.MAX_SIZE);
+    }
 
-    public Id16Bit(MemoryMapper_16 memoryMapper, BIOS bios) {
-        this.CPU = new CPU_16(bios.IN, bios.OUT, memoryMapper);
+    // each core has a stack of stackSize values
+    public Id16Bit(Context context, MemoryMapper_16 memoryMapper, IIn_16 input, IOut_16 output, int coreCount, int stackSize) {
+        this.context = context;
+        this.cores = CPU_16.CreateCores(context, coreCount, input, output, memoryMapper, stackSize);
+        this.runningThreads = new Thread[this.cores.length];
+    }
 
-        StartRunningThread();
+    public Context GetContext() {
+        return this.context;
     }
 
-    public void Start() {
+    // does nothing once closed
+    public synchronized void Start() {
+        if (this.closed) return;
+
+        this.StartRunningThreads();
         this.running = true;
+        this.UnparkRunningThreads();
     }
 
     public void Pause() {
         this.running = false;
     }
 
-    public void StepForward() {
+    public synchronized void StepForward() {
+        if (this.closed) return;
+
+        this.StartRunningThreads();
         this.Pause();
-        this.stepForward = true;
+        this.steps.incrementAndGet();
+        this.UnparkRunningThreads();
+    }
+
+    /*
+        Stops every core between two instructions (at the end of its current slice, about a millisecond at most),
+        runs the action, then lets them go on as they were (running or paused).
+        The action sees the memory as the cores left it, nothing writing it meanwhile.
+        Before the threads are started, or once closed, the action runs right away.
+     */
+    public synchronized void RunAtSafepoint(Runnable action) throws InterruptedException {
+        if (!this.started || this.closed) {
+            action.run();
+            return;
+        }
+
+        CountDownLatch reached = new CountDownLatch(this.runningThreads.length);
+        this.safepointRelease = new CountDownLatch(1);
+        this.safepoint = reached;
+        this.UnparkRunningThreads();
+
+        try {
+            reached.await();
+            action.run();
+        } finally {
+            this.safepoint = null;
+            this.safepointRelease.countDown();
+        }
+    }
+
+    /*
+        Stops the cores for good, between two instructions (at the end of their current slice), and waits for their threads to end.
+        The memory is left as the cores left it, detached from them (see CPU_16.Close), it may go on with another machine.
+     */
+    public synchronized void Close() throws InterruptedException {
+        if (this.closed) return;
+
+        this.closed = true;
+        this.running = false;
+        this.UnparkRunningThreads();
+
+        for (Thread runningThread : this.runningThreads) {
+            if (runningThread != null) runningThread.join();
+        }
+        for (CPU_16 core : this.cores) {
+            core.Close();
+        }
+    }
+
+    // raises an interrupt line of the first core, from any thread (see InterruptController_16)
+    public void RaiseInterrupt(int line) {
+        this.cores[0].GetInterruptController().Raise(line);
     }
 
-    public void SetMSStep(int ms) {
-        this.msSteps = ms;
+    public void SetExecutionEngine(EExecutionEngines engine) {
+        for (CPU_16 core : this.cores) {
+            core.SetExecutionEngine(engine);
+        }
     }
 
-    private void StartRunningThread() {
+    public void SetTracer(TraceRecorder tracer) {
+        this.cores[0].SetTracer(tracer);
+    }
+
+    public void SetOpcodeStats(OpcodeStats_16 opcodeStats) {
+        this.cores[0].SetOpcodeStats(opcodeStats);
+    }
+
+    public IProfiler_16 CreateProfiler(IProfiler_16.EProfilerModes mode) {
+        return this.cores[0].CreateProfiler(mode);
+    }
+
+    // the clock rate of each core in Hz, 0 for unbounded
+    public void SetClockRate(double frequency) {
+        this.clockRate = frequency;
+    }
+
+    private void StartRunningThreads() {
+        if (this.started) return;
+        this.started = true;
+
+        for (int i = 0; i < this.cores.length; i++) {
+            Thread runningThread = StartRunningThread(this.cores[i]);
+            this.runningThreads[i] = runningThread;
+            this.cores[i].GetInterruptController().SetWakeListener(() -> LockSupport.unpark(runningThread));
+        }
+    }
+
+    private void UnparkRunningThreads() {
+        for (Thread runningThread : this.runningThreads) {
+            LockSupport.unpark(runningThread);
+        }
+    }
+
+    private Thread StartRunningThread(CPU_16 core) {
         Thread runningThread = new Thread(() -> {
-            while (true) {
-                if (running || stepForward) {
-                    if (stepForward) stepForward = false;
-
-                    CPU.OnClock();
-
-                    // handle sleep
-                    if (msSteps > 0) {
-                        try {
-                            Thread.sleep(msSteps);
-                        } catch (InterruptedException e) {
-                            throw new RuntimeException(e);
-                        }
+            boolean paused = true;
+            long stepped = 0;
+            ClockGovernor governor = new ClockGovernor(0);
+
+            while (!this.closed) {
+                CountDownLatch safepoint = this.safepoint;
+                if (safepoint != null) {
+                    CountDownLatch release = this.safepointRelease;
+                    safepoint.countDown();
+                    AwaitRelease(release);
+                    governor.Reset();
+                }
+                else if (stepped < steps.get()) {
+                    stepped = steps.get();
+                    core.OnClock();
+                }
+                // sleep until started, stepped forward, resumed or closed
+                else if (!running) {
+                    paused = true;
+                    LockSupport.park(this);
+                }
+                else {
+                    if (governor.GetFrequency() != Math.max(0, this.clockRate)) {
+                        governor = new ClockGovernor(this.clockRate);
+                    }
+                    if (paused) {
+                        paused = false;
+                        governor.Reset();
+                    }
+
+                    CPU_16.RunResult result = core.Run(governor.GetSliceCycles());
+                    governor.Pace(result.cycles());
+
+                    // sleep until an interrupt is raised (or stepped forward, a safepoint, or closed)
+                    if (result.reason() == EStopReasons.WAIT) {
+                        LockSupport.park(this);
+                        governor.Reset();
                     }
                 }
             }
-        });
+        }, "core-" + core.GetCoreId());
 
         runningThread.start();
+        return runningThread;
+    }
+
+    private static void AwaitRelease(CountDownLatch release) {
+        while (release.getCount() > 0) {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {}
+        }
     }
 
 }
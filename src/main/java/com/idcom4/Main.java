@@ -1,16 +1,30 @@
 package com.idcom4;
 
 import com.idcom4.bios.BIOS;
+import com.idcom4.cpu.CPU_16;
+import com.idcom4.cpu.IProfiler_16;
+import com.idcom4.cpu.OpcodeStats_16;
+import com.idcom4.cpu.components.InterruptController_16;
 import com.idcom4.cpu.components.MemoryMapper_16;
 import com.idcom4.exceptions.IDException;
 import com.idcom4.infra.options.Options;
 import com.idcom4.infra.options.OptionsManager;
 import com.idcom4.infra.options.OptionsPrinter;
+import com.idcom4.mem_manager.Checkpointer;
 import com.idcom4.mem_manager.MemoryManager;
+import com.idcom4.trace.*;
 import com.idcom4.utils.logger.ConsoleLogger;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 
 public class Main {
+
+    private static final int TRACE_CAPACITY = 1 << 16;
+    private static final int OPCODE_STATS_TOP = 20;
+
     public static void main(String[] args) throws IDException {
 
         // get options
@@ -29,29 +43,85 @@ public class Main {
         // setup logger and context
         ConsoleLogger logger = new ConsoleLogger();
         logger.setEnabled(options.GetLog());
-        Context.initContext(logger);
+        Context context = new Context(logger);
 
         // init memory
-        MemoryMapper_16 memoryMapper = MemoryManager.CreateMemoryMapper(options.GetMmapFile());
+        MemoryMapper_16 memoryMapper = MemoryManager.CreateMemoryMapper(context, options.GetMmapFile());
+
+        // init computer, the input raising its interrupt line
+        BIOS bios = new BIOS();
+        Id16Bit computer = new Id16Bit(context, memoryMapper, bios, options.GetCores(), MemoryManager.GetStackSize(options.GetMmapFile()));
+        bios.SetInputListener(() -> computer.RaiseInterrupt(InterruptController_16.INPUT_LINE));
+
+        // save the persistent memory blocks in the background if asked, and on shutdown
+        Checkpointer checkpointer = MemoryManager.CreateCheckpointer(context, memoryMapper, options.GetMmapFile());
+        if (options.GetCheckpointPeriod() > 0)
+            checkpointer.Start(computer, options.GetCheckpointPeriod());
 
-        // init computer
-        Id16Bit computer = new Id16Bit(memoryMapper, new BIOS());
+        // select the execution engine
+        computer.SetExecutionEngine(options.GetEngine());
+
+        // trace the execution if asked, the logs being its human-readable form
+        List<ITraceSink> traceSinks = new ArrayList<>();
+        if (options.GetLog())
+            traceSinks.add(new LoggerTraceSink(logger));
+        if (options.GetTraceFile() != null) {
+            try {
+                traceSinks.add(new FileTraceSink(options.GetTraceFile()));
+            } catch (IOException e) {
+                throw new IDException("couldn't open the trace file: " + options.GetTraceFile(), e);
+            }
+        }
 
-        // set delay if any
-        if (options.GetDelay() > 0)
-            computer.SetMSStep(options.GetDelay());
+        TraceBuffer traceBuffer = traceSinks.isEmpty() ? null : new TraceBuffer(TRACE_CAPACITY);
+        TraceDrainer traceDrainer = traceSinks.isEmpty() ? null : new TraceDrainer(context, traceBuffer, traceSinks);
+        if (traceDrainer != null) {
+            if (options.GetEngine() == CPU_16.EExecutionEngines.JIT)
+                logger.warnln("The JIT engine doesn't trace, the interpreter runs instead");
+
+            traceDrainer.Start();
+            computer.SetTracer(new TraceRecorder(traceBuffer));
+        }
+
+        // count the opcodes if asked
+        OpcodeStats_16 opcodeStats = options.GetOpcodeStats() ? new OpcodeStats_16() : null;
+        if (opcodeStats != null) {
+            if (options.GetEngine() == CPU_16.EExecutionEngines.JIT)
+                logger.warnln("The JIT engine doesn't count opcodes, the interpreter runs instead");
+
+            computer.SetOpcodeStats(opcodeStats);
+        }
+
+        // profile the guest program if asked
+        IProfiler_16 profiler = options.GetProfilerMode() == null ? null : computer.CreateProfiler(options.GetProfilerMode());
+        if (profiler != null && options.GetProfilerMode() == IProfiler_16.EProfilerModes.EXACT && options.GetEngine() == CPU_16.EExecutionEngines.JIT)
+            logger.warnln("The JIT engine doesn't profile every instruction, the interpreter runs instead");
+
+        // set the clock rate if any, a delay between instructions being a clock period
+        if (options.GetClockRate() > 0)
+            computer.SetClockRate(options.GetClockRate());
+        else if (options.GetDelay() > 0)
+            computer.SetClockRate(1000.0 / options.GetDelay());
 
         // handle Ctrl + C SIGINT to save on shutdown
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             computer.Pause();
+            if (traceDrainer != null) traceDrainer.Close();
+            if (opcodeStats != null) opcodeStats.Print(System.err, OPCODE_STATS_TOP);
+            if (profiler != null) {
+                profiler.Stop();
+                profiler.Export(options.GetProfileOutput());
+            }
             try {
-                MemoryManager.SaveMemoryMapper(memoryMapper, options.GetMmapFile());
-            } catch (IDException e) {
+                checkpointer.Stop();
+                checkpointer.Checkpoint(computer);
+            } catch (IDException | InterruptedException e) {
                 throw new RuntimeException(e);
             }
         }));
 
         // start the computer
+        if (profiler != null) profiler.Start();
         computer.Start();
     }
 }
\ No newline at end of file
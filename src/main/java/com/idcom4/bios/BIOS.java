@@ -13,6 +13,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 public class BIOS {
 
     private final BlockingQueue<Character> inputQueue;
+    // called by the reader thread on each character read, null if none
+    private volatile Runnable inputListener;
 
     private int buildersIndex = 0;
     private final List<StringBuilder> builders = new ArrayList<>(Collections.singleton(new StringBuilder(8192)));
@@ -68,7 +70,12 @@ public class BIOS {
         };
     }
 
-    private static BlockingQueue<Character> StartNonBlockingUserInputReading() {
+    // e.g. raising an interrupt line, for guests waiting for input instead of polling it
+    public void SetInputListener(Runnable inputListener) {
+        this.inputListener = inputListener;
+    }
+
+    private BlockingQueue<Character> StartNonBlockingUserInputReading() {
         BlockingQueue<Character> inputQueue = new LinkedBlockingQueue<>();
 
         Thread readerThread = new Thread(() -> {
@@ -76,6 +83,9 @@ public class BIOS {
                 int ch;
                 while ((ch = System.in.read()) != -1) {
                     inputQueue.offer((char) ch);
+
+                    Runnable inputListener = this.inputListener;
+                    if (inputListener != null) inputListener.run();
                 }
             } catch (IOException e) {
                 e.printStackTrace();
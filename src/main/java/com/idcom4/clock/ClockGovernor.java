@@ -0,0 +1,79 @@
+package com.idcom4.clock;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Paces the CPU at a given clock rate.
+
+    Instructions are run by slices of about a millisecond worth of cycles,
+    and after each slice the governor waits until the wall clock catches up with the cycles executed,
+    so any rate can be targeted, whatever the cost of a single instruction.
+    A frequency of 0 means unbounded.
+ */
+public final class ClockGovernor {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long SLICES_PER_SECOND = 1000;
+    private static final long UNBOUNDED_SLICE_CYCLES = 10_000;
+
+    // parking is not precise enough for the last few microseconds, spin for those instead
+    private static final long SPIN_NANOS = 50_000;
+    // past this much delay, the lost time is dropped instead of being caught up with a burst
+    private static final long MAX_LATE_NANOS = 100_000_000L;
+
+    private final double frequency;
+    private final double nanosPerCycle;
+    private final long sliceCycles;
+
+    private long startTime;
+    private long cycles;
+
+    public ClockGovernor(double frequency) {
+        this.frequency = Math.max(0, frequency);
+        this.nanosPerCycle = this.frequency > 0 ? NANOS_PER_SECOND / this.frequency : 0;
+        this.sliceCycles = this.frequency > 0 ? Math.max(1, (long) (this.frequency / SLICES_PER_SECOND)) : UNBOUNDED_SLICE_CYCLES;
+
+        this.Reset();
+    }
+
+    public double GetFrequency() {
+        return frequency;
+    }
+
+    public long GetSliceCycles() {
+        return sliceCycles;
+    }
+
+    // restarts the pacing from now, to call when resuming after a pause
+    public void Reset() {
+        this.startTime = System.nanoTime();
+        this.cycles = 0;
+    }
+
+    // accounts for the executed cycles, and waits until it is time to run the next ones
+    public void Pace(long executedCycles) {
+        if (this.frequency <= 0) return;
+
+        this.cycles += executedCycles;
+        long target = this.startTime + (long) (this.cycles * this.nanosPerCycle);
+        long remaining = target - System.nanoTime();
+
+        if (remaining < -MAX_LATE_NANOS) {
+            this.Reset();
+            return;
+        }
+
+        if (remaining > SPIN_NANOS)
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+
+        while (System.nanoTime() < target) {
+            Thread.onSpinWait();
+        }
+
+        // rebase now and then so the cycles count never grows large enough to lose precision
+        if (this.cycles >= this.sliceCycles * SLICES_PER_SECOND) {
+            this.startTime = target;
+            this.cycles = 0;
+        }
+    }
+}
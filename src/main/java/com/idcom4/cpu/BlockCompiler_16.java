@@ -0,0 +1,126 @@
+package com.idcom4.cpu;
+
+import com.idcom4.cpu.CPU_16.DecodedInstruction;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/*
+    Translates a basic block into a hidden class, whose Execute method is straight-line bytecode:
+
+        cpu.SetExecutionPointer(<address of the next instruction>);
+        InstructionHandlers_16.<specialized handler>(cpu, <opcode>, <param0>, <param1>);
+        if (jit.IsCodeModified()) return <instructions executed>;      // only after memory writes
+        if (cpu.IsInterrupted()) return <instructions executed>;       // only after stack accesses
+        ...
+        return <instructions executed>;
+
+    Every opcode and param being a constant, HotSpot can inline the handlers
+    and optimize the whole block as a single method.
+    Hidden classes are unloaded with their block once it is invalidated.
+
+    The blocks are call-threaded: they only save the fetch and the dispatch of each instruction.
+    The handlers are the interpreter's, the guest registers stay in the RegisterFile_16 of the core,
+    and each instruction still stores the execution pointer there: the registers are not held in JVM locals,
+    nor register-allocated by HotSpot across the instructions of a block.
+ */
+class BlockCompiler_16 {
+
+    interface ICompiledBlock {
+        int Execute(CPU_16 cpu, JitEngine_16 jit);
+    }
+
+    private static final String CLASS_NAME = "com/idcom4/cpu/CompiledBlock";
+    private static final String CPU = Type.getInternalName(CPU_16.class);
+    private static final String JIT = Type.getInternalName(JitEngine_16.class);
+    private static final String HANDLERS = Type.getInternalName(InstructionHandlers_16.class);
+    private static final String HANDLER_DESCRIPTOR = "(L" + CPU + ";SSS)V";
+    private static final String EXECUTE_DESCRIPTOR = "(L" + CPU + ";L" + JIT + ";)I";
+
+    // local variable slots of the Execute method
+    private static final int CPU_SLOT = 1;
+    private static final int JIT_SLOT = 2;
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    ICompiledBlock Compile(int start, List<DecodedInstruction> instructions) throws ReflectiveOperationException {
+        byte[] bytecode = Generate(start, instructions);
+
+        Class<?> blockClass = this.lookup.defineHiddenClass(bytecode, true).lookupClass();
+        return (ICompiledBlock) blockClass.getDeclaredConstructor().newInstance();
+    }
+
+    private static byte[] Generate(int start, List<DecodedInstruction> instructions) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(V21, ACC_FINAL | ACC_SUPER, CLASS_NAME, null, "java/lang/Object", new String[] { Type.getInternalName(ICompiledBlock.class) });
+
+        GenerateConstructor(cw);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "Execute", EXECUTE_DESCRIPTOR, null, null);
+        mv.visitCode();
+
+        int address = start;
+        for (int i = 0; i < instructions.size(); i++) {
+            DecodedInstruction instruction = instructions.get(i);
+            address += 3;
+
+            // the interpreter moves the execution pointer before running the instruction
+            mv.visitVarInsn(ALOAD, CPU_SLOT);
+            mv.visitIntInsn(SIPUSH, (short) address);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "SetExecutionPointer", "(S)V", false);
+
+            mv.visitVarInsn(ALOAD, CPU_SLOT);
+            mv.visitIntInsn(SIPUSH, instruction.opcode());
+            mv.visitIntInsn(SIPUSH, instruction.param0());
+            mv.visitIntInsn(SIPUSH, instruction.param1());
+            mv.visitMethodInsn(INVOKESTATIC, HANDLERS, InstructionHandlers_16.GetHandlerName(instruction.rawOpcode() & 0xFFFF), HANDLER_DESCRIPTOR, false);
+
+            // leave the block if it just overwrote compiled code
+            if (JitEngine_16.WritesMemory(instruction) && i < instructions.size() - 1) {
+                Label next = new Label();
+                mv.visitVarInsn(ALOAD, JIT_SLOT);
+                mv.visitMethodInsn(INVOKEVIRTUAL, JIT, "IsCodeModified", "()Z", false);
+                mv.visitJumpInsn(IFEQ, next);
+                mv.visitIntInsn(SIPUSH, i + 1);
+                mv.visitInsn(IRETURN);
+                mv.visitLabel(next);
+            }
+
+            // leave the block if it just raised a stack fault
+            if (JitEngine_16.AccessesStack(instruction) && i < instructions.size() - 1) {
+                Label next = new Label();
+                mv.visitVarInsn(ALOAD, CPU_SLOT);
+                mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "IsInterrupted", "()Z", false);
+                mv.visitJumpInsn(IFEQ, next);
+                mv.visitIntInsn(SIPUSH, i + 1);
+                mv.visitInsn(IRETURN);
+                mv.visitLabel(next);
+            }
+        }
+
+        mv.visitIntInsn(SIPUSH, instructions.size());
+        mv.visitInsn(IRETURN);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void GenerateConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
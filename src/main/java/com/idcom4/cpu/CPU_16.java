@@ -2,18 +2,15 @@ package com.idcom4.cpu;
 
 import com.idcom4.Context;
 import com.idcom4.cpu.components.*;
+import com.idcom4.exceptions.IDException;
+import com.idcom4.trace.TraceRecorder;
 
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 public class CPU_16 {
 
-    record InstructionPayload(
-            short opcode,
-            short param0, short param1,
-            boolean param0AsIntLit, boolean param1AsIntLit,
-            boolean param0AsPointer, boolean param1AsPointer,
-            boolean param0AsMemAddr, boolean param1AsMemAddr
-    ) {}
+    record DecodedInstruction(short rawOpcode, short opcode, short param0, short param1, IInstructionHandler handler) {}
 
     enum DataEndpoints {
         R0(0x0),                    // static address
@@ -30,6 +27,13 @@ public class CPU_16 {
         STACK(0xb),                 // static address
         IN(0xc),                    // static address
         OUT(0xd),                   // static address
+        CORE_ID(0xf),               // static address, read-only
+        CORE_COUNT(0x10),           // static address, read-only
+        CYCLES_LOW(0x11),           // static address, read-only, latches CYCLES_HIGH
+        CYCLES_HIGH(0x12),          // static address, read-only
+        IRQ_MASK(0x13),             // static address
+        IRQ_VECTORS(0x14),          // static address
+        IRQ_PENDING(0x15),          // static address, writing clears the lines set
         MEM_INTERRUPT(0xe),         // dynamic address, reserved for root interrupt handling
         MEM_START(0x19);            // dynamic address
 
@@ -78,7 +82,13 @@ public class CPU_16 {
         // reserved for comparison up to 0x1f
         MOVE(0x20),
         INTERRUPT(0x21),
-        OP_COUNT(0x22);
+        COMPARE_AND_SWAP(0x22),
+        INTER_PROCESSOR_INTERRUPT(0x23),
+        MEMORY_COPY(0x24),
+        MEMORY_SET(0x25),
+        MEMORY_COMPARE(0x26),
+        WAIT(0x27),
+        OP_COUNT(0x28);
 
         public final short code;
 
@@ -86,20 +96,23 @@ public class CPU_16 {
             this.code = (short)code;
         }
 
+        // null if unknown
         public static OPCodes fromBytes(short code) {
             for (OPCodes op : OPCodes.values()) {
                 if (op.code == code) return op;
             }
 
-            Context.INSTANCE.logger.errln("Unknown opcode: " + code);
-            return OPCodes.NOOP;
+            return null;
         }
     }
 
     enum EInterrupts {
         NONE(0x0),
         END_OF_EX(0x1),
-        PAUSE_EX(0x2);
+        PAUSE_EX(0x2),
+        STACK_OVERFLOW(0x3),    // pushed on a full stack, nothing pushed
+        STACK_UNDERFLOW(0x4),   // popped from an empty stack, 0 popped
+        IRQ(0x10);              // up to 0x1f: the interrupt line IRQ + n was taken (see InterruptController_16)
 
         public final short code;
 
@@ -107,22 +120,76 @@ public class CPU_16 {
             this.code = (short)code;
         }
 
+        // null if unknown
         public static EInterrupts fromBytes(short code) {
             for (EInterrupts op : EInterrupts.values()) {
                 if (op.code == code) return op;
             }
 
-            Context.INSTANCE.logger.errln("Unknown interrupt: " + code);
-            return EInterrupts.NONE;
+            return null;
         }
     }
 
+    public enum EExecutionEngines {
+        INTERPRETER("interpreter"),
+        JIT("jit");
+
+        public final String name;
+
+        EExecutionEngines(String name) {
+            this.name = name;
+        }
+
+        public static EExecutionEngines fromName(String name) {
+            for (EExecutionEngines engine : EExecutionEngines.values()) {
+                if (engine.name.equals(name)) return engine;
+            }
+
+            return null;
+        }
+    }
+
+    public enum EStopReasons {
+        CYCLES_EXHAUSTED,   // ran the maximum amount of cycles
+        INTERRUPT,          // an interrupt was raised, the next cycle services it
+        HALT,               // an end of execution interrupt was raised
+        PAUSE,              // a pause execution interrupt was raised
+        BREAKPOINT,         // the breakpoint condition became true
+        WAIT                // waiting for an interrupt, with no cycle timer to idle until
+    }
+
+    public record RunResult(EStopReasons reason, long cycles) {}
+
+    /*
+        Everything a single core machine needs to resume: registers, cycles, interrupt state, stack and memory.
+        The memory pages are shared copy-on-write with the snapshotted machine and with every machine created from it,
+        so creating one only copies page tables. The execution engine, the instrumentation and the timers are not part of it.
+     */
+    public record Snapshot(short[] registers, long cycles, boolean interrupt, boolean waiting, int pendingInterProcessorInterrupt,
+                           short interruptMask, short interruptVectors, short pendingInterrupts,
+                           MemoryBlock_16.Snapshot stack, MemoryMapper_16.Snapshot memory) {}
+
+    // static addresses of the registers the CPU itself uses
+    private static final int R0 = DataEndpoints.R0.address;
+    private static final int R1 = DataEndpoints.R1.address;
+    private static final int R2 = DataEndpoints.R2.address;
+    private static final int R3 = DataEndpoints.R3.address;
+    private static final int R_ACCU0 = DataEndpoints.R_ACCU0.address;
+    private static final int R_ACCU1 = DataEndpoints.R_ACCU1.address;
+    private static final int R_FLAGS = DataEndpoints.R_FLAGS.address;
+    private static final int R_SPTR = DataEndpoints.R_SPTR.address;
+    private static final int R_EXPTR = DataEndpoints.R_EXPTR.address;
+    private static final int R_MEM_EXTENSION = DataEndpoints.R_MEM_EXTENSION.address;
+    private static final int R_INTERRUPT_CODE = DataEndpoints.R_INTERRUPT_CODE.address;
+    private static final int REGISTER_COUNT = R_INTERRUPT_CODE + 1;
+
+    private static final int NO_INTER_PROCESSOR_INTERRUPT = -1;
+
     interface IInstructionHandler {
-        void handle(InstructionPayload payload);
+        void handle(CPU_16 cpu, short opcode, short param0, short param1);
     }
 
-    private IInstructionHandler[] instructionHandlers;
-    private Register_16[] registers;
+    private final Context context;
 
     // IO
     private final IIn_16 input;
@@ -131,42 +198,130 @@ public class CPU_16 {
     // interrupt
     private boolean interrupt;
 
-    // general purpose registers
-    private Register_16 r0;
-    private Register_16 r1;
-    private Register_16 r2;
-    private Register_16 r3;
+    // the interrupt lines of the core, and its cycle timers
+    private final InterruptController_16 interrupts;
+
+    // set by WAIT, until an interrupt is taken
+    private boolean waiting;
 
-    private Register_16 accumulator0;
-    private Register_16 accumulator1;
+    // cycles run since reset, see GetCycles
+    private long cycleCount;
+    // the high half of the cycles, latched when reading the low half
+    private short cyclesHigh;
 
-    private Register_16 flags;
+    // cores sharing the memory, this one included
+    private final int coreId;
+    private CPU_16[] cores;
 
-    private Register_16 stackPointer;
-    private Register_16 executionPointer;
+    // the code of an interrupt raised by another core, taken before the next instruction
+    private final AtomicInteger pendingInterProcessorInterrupt = new AtomicInteger(NO_INTER_PROCESSOR_INTERRUPT);
 
-    private Register_16 memoryAddrExtension;
+    // registers, indexed by their static address
+    private final RegisterFile_16 registers;
 
-    private Register_16 interruptCode;
+    // the flags register is only updated when read, see ReadRegister
+    private final LazyFlags_16 flags;
 
     private final MemoryMapper_16 memoryMapper;
 
+    private final InstructionCache_16 instructionCache;
+    private final boolean multiCore;
+
     private final Stack_16 stack;
 
     private final ALU_16 ALU;
 
-    public CPU_16(IIn_16 input, IOut_16 output, MemoryMapper_16 memoryMapper) {
+    // null when running on the interpreter only
+    private JitEngine_16 jit;
+
+    // null when not tracing
+    private TraceRecorder tracer;
+
+    // null when not counting opcodes
+    private OpcodeStats_16 opcodeStats;
+
+    // null when not profiling every instruction
+    private ExactProfiler_16 exactProfiler;
+
+    public CPU_16(Context context, IIn_16 input, IOut_16 output, MemoryMapper_16 memoryMapper) {
+        this(context, input, output, memoryMapper, Stack_16.MAX_SIZE);
+    }
+
+    public CPU_16(Context context, IIn_16 input, IOut_16 output, MemoryMapper_16 memoryMapper, int stackSize) {
+        this(context, input, output, memoryMapper, 0, stackSize, null, false);
+        this.cores = new CPU_16[] { this };
+        this.ConnectDevices();
+    }
+
+    // a new machine resuming from the snapshot, with its own memory mapper
+    public CPU_16(Context context, IIn_16 input, IOut_16 output, Snapshot snapshot) {
+        this(context, input, output, new MemoryMapper_16(context, snapshot.memory()), 0, snapshot.stack().size(), snapshot.stack(), false);
+        this.cores = new CPU_16[] { this };
+
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            this.registers.SetValue(i, snapshot.registers()[i]);
+        }
+        this.cycleCount = snapshot.cycles();
+        this.interrupt = snapshot.interrupt();
+        this.waiting = snapshot.waiting();
+        this.pendingInterProcessorInterrupt.set(snapshot.pendingInterProcessorInterrupt());
+        this.interrupts.Restore(snapshot.interruptMask(), snapshot.interruptVectors(), snapshot.pendingInterrupts());
+    }
 
+    // multiCore: other cores write the memory from their own threads, see InstructionCache_16 and JitEngine_16
+    private CPU_16(Context context, IIn_16 input, IOut_16 output, MemoryMapper_16 memoryMapper, int coreId, int stackSize, MemoryBlock_16.Snapshot stack, boolean multiCore) {
+
+        this.context = context;
+        this.coreId = coreId;
         this.input = input;
         this.output = output;
         this.memoryMapper = memoryMapper;
+        this.interrupts = new InterruptController_16(this::GetCycles);
+        this.multiCore = multiCore;
+
+        // self-modifying code must not run stale decoded instructions
+        this.instructionCache = new InstructionCache_16(multiCore);
+        this.memoryMapper.AddWriteListener(this.instructionCache);
+
+        this.registers = new RegisterFile_16(REGISTER_COUNT);
+        this.flags = new LazyFlags_16();
+        // start execution at first memory byte
+        this.registers.SetValue(R_EXPTR, DataEndpoints.MEM_START.address);
+
+        this.ALU = new ALU_16(context);
+        this.stack = stack == null
+                ? new Stack_16(context, stackSize, this.registers, R_SPTR)
+                : new Stack_16(context, stack, this.registers, R_SPTR);
+    }
 
-        this.InitRegisters();
+    /*
+        Symmetric multiprocessing: cores sharing the memory and the IO, each one with its own registers and stack,
+        all starting at MEM_START. Every core is meant to run on its own thread, the IO has to be thread-safe.
+
+        Guests tell cores apart with the CORE_ID and CORE_COUNT static addresses,
+        synchronize them with COMPARE_AND_SWAP, and signal them with INTER_PROCESSOR_INTERRUPT.
+        The devices of the memory raise the interrupt lines of the first core.
+        Memory accesses are ordered (see MemoryBlock_16), and a core never keeps running stale code another core modified:
+        the decoded instructions caches and the compiled blocks are invalidated by every core
+        (see InstructionCache_16 and JitEngine_16). Like any other data,
+        code written without synchronization may still be run as it was before the write for a few instructions.
+     */
+    public static CPU_16[] CreateCores(Context context, int count, IIn_16 input, IOut_16 output, MemoryMapper_16 memoryMapper) {
+        return CreateCores(context, count, input, output, memoryMapper, Stack_16.MAX_SIZE);
+    }
 
-        this.InitInstructionHandlers();
+    public static CPU_16[] CreateCores(Context context, int count, IIn_16 input, IOut_16 output, MemoryMapper_16 memoryMapper, int stackSize) {
+        CPU_16[] cores = new CPU_16[count];
+        for (int i = 0; i < count; i++) {
+            cores[i] = new CPU_16(context, input, output, memoryMapper, i, stackSize, null, count > 1);
+        }
 
-        this.ALU = new ALU_16();
-        this.stack = new Stack_16(Short.MAX_VALUE, this.stackPointer);
+        for (CPU_16 core : cores) {
+            core.cores = cores;
+        }
+        cores[0].ConnectDevices();
+
+        return cores;
     }
 
     /*
@@ -195,215 +350,553 @@ public class CPU_16 {
         0x14        jump if greater/equal         val 0               val 1           flags set, jump to address stored in r3 if true
         0x20        move                          val 0               val 1           move the value tied to value 0 to the address tied to value 1
         0x21        interrupt                     interrupt code      -               triggers an interrupt
+        0x22        compare and swap              val 0               val 1           atomically move value 0 to the memory address tied to value 1 if it holds accumulator0,
+                                                                                      the value found to accumulator0, 1 to accumulator1 if moved (else 0)
+        0x23        inter-processor interrupt     core id             interrupt code  triggers an interrupt on a core, the interrupted execution pointer is pushed on its stack
+        0x24        memory copy                   -                   -               copies r2 values from the memory address in r0 to the one in r1 (overlap allowed)
+        0x25        memory set                    -                   -               writes the value of r0 to r2 values from the memory address in r1
+        0x26        memory compare                -                   -               compares r2 values from the memory addresses in r0 and r1,
+                                                                                      the offset of the first difference (r2 if none) to accumulator0, 1 to accumulator1 if equal (else 0),
+                                                                                      a range out of the memory differing at offset 0
+        0x27        wait                          -                   -               idles until an interrupt is taken
      */
     public void OnClock() {
-        // DO STUFF
+        this.TakePendingInterrupts();
+        this.Clock();
+    }
 
+    // a cycle: services the interrupt raised, idles, or runs the next instruction
+    private void Clock() {
         if (interrupt) {
             this.ClearInterrupt();
-            this.executionPointer.SetValue(DataEndpoints.MEM_INTERRUPT.address);
-        } else {
+            this.registers.SetValue(R_EXPTR, DataEndpoints.MEM_INTERRUPT.address);
+        } else if (!this.waiting) {
 
-            int ptr = this.executionPointer.GetValue();
+            short ptr = this.registers.GetValue(R_EXPTR);
+            DecodedInstruction instruction = this.Fetch(ptr);
 
-            short opcode = memoryMapper.GetValue(this.executionPointer.GetValue());
-            short param0 = memoryMapper.GetValue(this.executionPointer.Increment());
-            short param1 = memoryMapper.GetValue(this.executionPointer.Increment());
-            this.executionPointer.Increment();
+            this.registers.SetValue(R_EXPTR, (short) (ptr + 3));
 
-            Context.INSTANCE.logger.logln("EXPTR: %d (%x) | [opcode]: %04x\t[0]: %04x\t[1]: %04x", ptr, ptr, ((int)opcode & 0xFFFF), ((int)param0 & 0xFFFF), ((int)param1 & 0xFFFF));
+            if (this.opcodeStats != null) this.opcodeStats.Record(instruction.rawOpcode());
+            if (this.exactProfiler != null) this.exactProfiler.Record(ptr, instruction);
+            if (this.tracer != null) this.tracer.Begin(ptr, instruction.rawOpcode(), instruction.param0(), instruction.param1());
 
-            boolean param0AsIntLit = (opcode & Masks.PARAM0_AS_INT_LIT.value) != 0;
-            boolean param1AsIntLit = (opcode & Masks.PARAM1_AS_INT_LIT.value) != 0;
-            boolean param0AsPointer = (opcode & Masks.PARAM0_AS_POINTER.value) != 0;
-            boolean param1AsPointer = (opcode & Masks.PARAM1_AS_POINTER.value) != 0;
-            boolean param0AsMemAddr = (opcode & Masks.PARAM0_AS_MEMORY_ADDR.value) != 0;
-            boolean param1AsMemAddr = (opcode & Masks.PARAM1_AS_MEMORY_ADDR.value) != 0;
+            instruction.handler().handle(this, instruction.opcode(), instruction.param0(), instruction.param1());
 
-            short cleanOpcode = (short) (opcode & Masks.OPCODE.value);
+            if (this.tracer != null) this.tracer.End(this.ReadRegister(R_FLAGS));
+        }
 
-            InstructionPayload payload = new InstructionPayload(
-                    cleanOpcode,
-                    param0, param1,
-                    param0AsIntLit,  param1AsIntLit,
-                    param0AsPointer, param1AsPointer,
-                    param0AsMemAddr, param1AsMemAddr
-            );
+        this.cycleCount++;
+    }
 
-            if (cleanOpcode < this.instructionHandlers.length)
-                this.instructionHandlers[cleanOpcode].handle(payload);
-            else
-                this.UnknownInstructionHandler(payload);
+    public RunResult Run(long maxCycles) {
+        return this.RunUntil(maxCycles, null);
+    }
 
-            Context.INSTANCE.logger.logln("");
+    /*
+        Runs up to maxCycles cycles in a single loop, and stops early:
+        - when an interrupt is raised (it is serviced by the first cycle of the next run)
+        - when the breakpoint condition, checked after each instruction, is true
+        - when waiting for an interrupt (see WAIT) with no cycle timer set, the cycles until the next timer being skipped otherwise
+
+        Without breakpoint nor instrumentation (tracing, opcode statistics, exact profiling), whole sequences run at once
+        as long as they fit in the remaining cycles, and end before the next cycle timer:
+        - compiled blocks, with the JIT engine
+        - fused instructions otherwise (see SuperInstructions_16)
+     */
+    public RunResult RunUntil(long maxCycles, Predicate<CPU_16> breakpoint) {
+        long cycles = 0;
+
+        while (cycles < maxCycles) {
+            int executed = 0;
+
+            this.TakePendingInterrupts();
+
+            if (this.waiting) {
+                long deadline = this.interrupts.GetDeadline();
+                if (deadline == InterruptController_16.NO_DEADLINE) return new RunResult(EStopReasons.WAIT, cycles);
+
+                // idle until the timer, at once
+                long idle = Math.max(0, Math.min(deadline - this.cycleCount, maxCycles - cycles));
+                this.cycleCount += idle;
+                cycles += idle;
+                continue;
+            }
+
+            if (!this.interrupt && breakpoint == null && !this.IsInstrumented()) {
+                long available = Math.min(maxCycles - cycles, this.interrupts.GetDeadline() - this.cycleCount);
+
+                if (this.jit != null && available >= JitEngine_16.MAX_BLOCK_INSTRUCTIONS)
+                    executed = this.jit.Execute(this);
+
+                if (executed == 0 && available >= SuperInstructions_16.MAX_LENGTH)
+                    executed = this.ExecuteFused();
+
+                this.cycleCount += executed;
+            }
+
+            if (executed == 0) {
+                this.Clock();
+                executed = 1;
+            }
+
+            cycles += executed;
+
+            if (this.interrupt) {
+                short code = this.registers.GetValue(R_INTERRUPT_CODE);
+                EStopReasons reason = code == EInterrupts.END_OF_EX.code ? EStopReasons.HALT
+                        : code == EInterrupts.PAUSE_EX.code ? EStopReasons.PAUSE
+                        : EStopReasons.INTERRUPT;
+                return new RunResult(reason, cycles);
+            }
+
+            if (breakpoint != null && breakpoint.test(this))
+                return new RunResult(EStopReasons.BREAKPOINT, cycles);
         }
+
+        return new RunResult(EStopReasons.CYCLES_EXHAUSTED, cycles);
     }
 
-    private void InitRegisters() {
-        this.InitGeneralPurposeRegisters();
-        this.InitDedicatedRegisters();
+    /*
+        Must be taken between two runs, from the thread running the machine or while it's stopped.
+        A core of a multi-core machine can be snapshotted too, but only its own state and the memory are:
+        the machines created from it are single core. Machines with devices in their memory can't be snapshotted.
+     */
+    public Snapshot TakeSnapshot() throws IDException {
+        // the flags register is part of the state, not the operation it's computed from
+        this.ReadRegister(R_FLAGS);
 
-        this.registers = new Register_16[11];
-        this.registers[DataEndpoints.R0.address] = this.r0;
-        this.registers[DataEndpoints.R1.address] = this.r1;
-        this.registers[DataEndpoints.R2.address] = this.r2;
-        this.registers[DataEndpoints.R3.address] = this.r3;
-        this.registers[DataEndpoints.R_ACCU0.address] = this.accumulator0;
-        this.registers[DataEndpoints.R_ACCU1.address] = this.accumulator1;
-        this.registers[DataEndpoints.R_FLAGS.address] = this.flags;
-        this.registers[DataEndpoints.R_SPTR.address] = this.stackPointer;
-        this.registers[DataEndpoints.R_EXPTR.address] = this.executionPointer;
-        this.registers[DataEndpoints.R_MEM_EXTENSION.address] = this.memoryAddrExtension;
-        this.registers[DataEndpoints.R_INTERRUPT_CODE.address] = this.interruptCode;
+        short[] registers = new short[REGISTER_COUNT];
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            registers[i] = this.registers.GetValue(i);
+        }
+
+        return new Snapshot(registers, this.cycleCount, this.interrupt, this.waiting, this.pendingInterProcessorInterrupt.get(),
+                this.interrupts.GetMask(), this.interrupts.GetVectors(), this.interrupts.GetPending(),
+                this.stack.TakeSnapshot(), this.memoryMapper.TakeSnapshot());
     }
 
-    private void InitGeneralPurposeRegisters() {
-        this.r0 = new Register_16((short) 0);
-        this.r1 = new Register_16((short) 0);
-        this.r2 = new Register_16((short) 0);
-        this.r3 = new Register_16((short) 0);
+    public void SetExecutionEngine(EExecutionEngines engine) {
+        if (engine == EExecutionEngines.JIT && this.jit == null) {
+            this.jit = new JitEngine_16(this.context, this.memoryMapper, this.multiCore);
+            this.memoryMapper.AddWriteListener(this.jit);
+        } else if (engine == EExecutionEngines.INTERPRETER && this.jit != null) {
+            this.memoryMapper.RemoveWriteListener(this.jit);
+            this.jit = null;
+        }
     }
 
-    private void InitDedicatedRegisters() {
+    /*
+        Detaches the core from its memory, which may outlive it (shared with other machines, see Fleet.Submit):
+        its writes stop paying for the caches of the core, and its devices stop raising its interrupt lines.
+        The core must not run anymore.
+     */
+    public void Close() {
+        this.memoryMapper.RemoveWriteListener(this.instructionCache);
+        this.SetExecutionEngine(EExecutionEngines.INTERPRETER);
+        // only connected to the first core, devices ignore the others
+        this.DisconnectDevices();
+    }
 
-        this.accumulator0 = new Register_16((short) 0);
-        this.accumulator1 = new Register_16((short) 0);
+    // records every instruction executed from now on, null to stop tracing
+    public void SetTracer(TraceRecorder tracer) {
+        this.tracer = tracer;
+    }
 
-        this.flags = new Register_16((short) 0);
-        this.stackPointer = new Register_16((short) 0);
-        this.memoryAddrExtension = new Register_16((short) 0);
-        this.interruptCode = new Register_16((short) 0);
+    // counts every instruction executed from now on, null to stop counting
+    public void SetOpcodeStats(OpcodeStats_16 opcodeStats) {
+        this.opcodeStats = opcodeStats;
+    }
 
-        // start execution at first memory byte
-        this.executionPointer = new Register_16(DataEndpoints.MEM_START.address);
+    // the profiler is started, stopped and exported by the caller
+    public IProfiler_16 CreateProfiler(IProfiler_16.EProfilerModes mode) {
+        return switch (mode) {
+            case EXACT -> new ExactProfiler_16(this);
+            case SAMPLING -> new SamplingProfiler_16(this);
+        };
+    }
+
+    // profiles every instruction executed from now on, null to stop profiling
+    void SetExactProfiler(ExactProfiler_16 exactProfiler) {
+        this.exactProfiler = exactProfiler;
+    }
+
+    // instrumentation needs to see every instruction, one at a time
+    private boolean IsInstrumented() {
+        return this.tracer != null || this.opcodeStats != null || this.exactProfiler != null;
+    }
+
+    /*
+        Read-only view of the stack and the memory for the profilers, possibly from another thread.
+        It never decodes through the instruction cache, nor logs out of bounds accesses.
+     */
+
+    int GetStackDepth() {
+        return Math.max(0, Math.min(this.registers.GetValue(R_SPTR), this.stack.GetSize()));
+    }
+
+    // 0 being the bottom of the stack
+    short GetStackValue(int index) {
+        return this.stack.GetValue(index);
+    }
+
+    // devices read as 0, reading one from the sampler thread could change its state
+    private short PeekMemory(int address) {
+        if (address < 0 || address >= this.memoryMapper.GetSize() || this.memoryMapper.IsDeviceRange(address, 1)) return 0;
+
+        return this.memoryMapper.GetValue(address);
     }
 
-    private void InitInstructionHandlers() {
-        this.instructionHandlers = new IInstructionHandler[OPCodes.OP_COUNT.code];
-        Arrays.fill(this.instructionHandlers, (IInstructionHandler)this::UnknownInstructionHandler);
+    /*
+        Calls are a return address pushed on the stack, then a MOVE <function> -> R_EXPTR.
+        So a stack value V is taken as a return address when the instruction at V - 3 is a MOVE into R_EXPTR.
+        Returns the function called (ProfileReport_16.NO_FUNCTION if computed at runtime), or NOT_A_CALL.
+     */
+    static final int NOT_A_CALL = -2;
+
+    int GetCallTarget(int returnAddress) {
+        int call = (returnAddress & 0xFFFF) - 3;
+        int word = this.PeekMemory(call) & 0xFFFF;
+
+        if (!IsMoveToExecutionPointer(word, this.PeekMemory(call + 2))) return NOT_A_CALL;
+        if (InstructionHandlers_16.GetParam0Mode(word) != InstructionHandlers_16.IMMEDIATE) return ProfileReport_16.NO_FUNCTION;
 
-        // math operations
-        for (int i = 0; i < OPCodes.MATH_OPS.code; i++) {
-            this.instructionHandlers[i] = this::MathInstructionHandler;
+        return this.PeekMemory(call + 1) & 0xFFFF;
+    }
+
+    static boolean IsMoveToExecutionPointer(int word, short param1) {
+        return param1 == R_EXPTR
+                && InstructionHandlers_16.GetKind(word) == InstructionHandlers_16.EKinds.MOVE
+                && InstructionHandlers_16.GetDestinationMode(word) == InstructionHandlers_16.STATIC;
+    }
+
+    // runs the fused instruction at the execution pointer, returns the amount of instructions executed, 0 if none
+    private int ExecuteFused() {
+        short ptr = this.registers.GetValue(R_EXPTR);
+
+        SuperInstructions_16.FusedInstruction fused = this.instructionCache.GetFused(ptr);
+        if (fused == null) {
+            int writes = this.instructionCache.GetWrites();
+            fused = SuperInstructions_16.Fuse(this, ptr, Math.min(Short.MAX_VALUE + 1, this.memoryMapper.GetSize()));
+            this.instructionCache.PutFused(ptr, fused, writes);
         }
 
-        // jump instructions
-        for (int i = OPCodes.JMP_EQ.code; i <= OPCodes.JMP_GREATER_EQ.code; i++) {
-           this.instructionHandlers[i] = this::JumpInstructionHandler;
+        if (fused == SuperInstructions_16.NONE) return 0;
+
+        fused.handler().handle(this, ptr);
+        return fused.fusion().length;
+    }
+
+    DecodedInstruction Fetch(short ptr) {
+        DecodedInstruction instruction = this.instructionCache.Get(ptr);
+        if (instruction == null) {
+            int writes = this.instructionCache.GetWrites();
+            instruction = this.Decode(ptr);
+            // a device may change its registers without them being written, they are decoded on every fetch
+            if (!this.IsDeviceCode(ptr, 1)) this.instructionCache.Put(ptr, instruction, writes);
         }
 
-        this.instructionHandlers[OPCodes.MOVE.code] = this::MoveInstructionHandler;
-        this.instructionHandlers[OPCodes.INTERRUPT.code] = this::InterruptInstructionHandler;
+        return instruction;
     }
 
-    private void UnknownInstructionHandler(InstructionPayload payload) {
-        Context.INSTANCE.logger.errln("Unknown instruction: " + payload.opcode);
+    // whether any of the instructions from ptr is read from a device
+    boolean IsDeviceCode(short ptr, int instructions) {
+        return this.memoryMapper.IsDeviceRange(ptr, instructions * 3);
     }
 
-    private void MathInstructionHandler(InstructionPayload payload) {
+    // decodes from the memory, bypassing the instruction cache
+    DecodedInstruction Decode(short ptr) {
+        short opcode = memoryMapper.GetValue(ptr);
+        short param0 = memoryMapper.GetValue((short) (ptr + 1));
+        short param1 = memoryMapper.GetValue((short) (ptr + 2));
 
-        short value0 = this.GetParamValue(payload.param0, payload.param0AsIntLit, payload.param0AsPointer, payload.param0AsMemAddr);
-        short value1 = this.GetParamValue(payload.param1, payload.param1AsIntLit, payload.param1AsPointer, payload.param1AsMemAddr);
+        // the whole opcode word, flags included, selects the handler specialized for its addressing modes
+        IInstructionHandler handler = InstructionHandlers_16.DISPATCH_TABLE[opcode & 0xFFFF];
 
-        ALU_16.Out out = this.ALU.compute(payload.opcode, value0, value1);
+        return new DecodedInstruction(opcode, (short) (opcode & Masks.OPCODE.value), param0, param1, handler);
+    }
 
-        this.accumulator0.SetValue(out.primaryResult());
-        this.accumulator1.SetValue(out.secondaryResult());
-        this.flags.SetValue(out.flags());
+    public int GetCoreId() {
+        return this.coreId;
+    }
 
+    public short GetExecutionPointer() {
+        return this.registers.GetValue(R_EXPTR);
+    }
 
-        // print everything
-        Context.INSTANCE.logger.log(">\tMATH: %d (%04x) and %d (%04x) = %d (%04x)\n", ((int)value0 & 0xFFFF), ((int)value0 & 0xFFFF), ((int)value1 & 0xFFFF), ((int)value1 & 0xFFFF), ((int)out.primaryResult() & 0xFFFF), ((int)out.primaryResult() & 0xFFFF));
+    public short GetRegisterValue(int register) {
+        return this.ReadRegister(register);
     }
 
-    private void JumpInstructionHandler(InstructionPayload payload) {
-        short value0 = this.GetParamValue(payload.param0, payload.param0AsIntLit, payload.param0AsPointer, payload.param0AsMemAddr);
-        short value1 = this.GetParamValue(payload.param1, payload.param1AsIntLit, payload.param1AsPointer, payload.param1AsMemAddr);
+    private short ReadRegister(int register) {
+        if (register == R_FLAGS && this.flags.IsPending()) this.registers.SetValue(R_FLAGS, this.flags.Materialize());
 
-        ALU_16.Out out = this.ALU.compute(payload.opcode, value0, value1);
+        return this.registers.GetValue(register);
+    }
 
-        Context.INSTANCE.logger.log(">\tCMP: %d (%04x) and %d (%04x) = %b\n", ((int)value0 & 0xFFFF), ((int)value0 & 0xFFFF), ((int)value1 & 0xFFFF), ((int)value1 & 0xFFFF), out.cmpTrue());
+    void SetExecutionPointer(short value) {
+        this.registers.SetValue(R_EXPTR, value);
+    }
+
+    void ExecuteUnknown(short opcode) {
+        this.context.logger.errln("Unknown instruction: " + opcode);
+    }
 
-        if (out.cmpTrue()) this.executionPointer.SetValue(this.r3.GetValue());
+    void ExecuteMath(short opcode, short value0, short value1) {
+        long result = this.ALU.Compute(opcode, value0, value1);
 
-        this.flags.SetValue(out.flags());
+        this.registers.SetValue(R_ACCU0, ALU_16.PrimaryResult(result));
+        this.registers.SetValue(R_ACCU1, ALU_16.SecondaryResult(result));
+        this.flags.Record(value0, value1, ALU_16.PrimaryResult(result), ALU_16.SecondaryResult(result));
+
+        if (this.tracer != null) this.tracer.Math(value0, value1, ALU_16.PrimaryResult(result));
     }
 
-    private void MoveInstructionHandler(InstructionPayload payload) {
-        short value0 = this.GetParamValue(payload.param0, payload.param0AsIntLit, payload.param0AsPointer, payload.param0AsMemAddr);
-        short value1 = this.GetAddress(payload.param1, payload.param1AsPointer);
+    void ExecuteJump(short opcode, short value0, short value1) {
+        long result = this.ALU.Compute(opcode, value0, value1);
+        boolean cmpTrue = ALU_16.IsCmpTrue(result);
+
+        if (this.tracer != null) this.tracer.Compare(value0, value1, cmpTrue);
 
-        Context.INSTANCE.logger.log(">\tMOVE: %d (%04x) to %d (%04x)\n", ((int)value0 & 0xFFFF), ((int)value0 & 0xFFFF), ((int)value1 & 0xFFFF), ((int)value1 & 0xFFFF));
+        if (cmpTrue) this.registers.SetValue(R_EXPTR, this.registers.GetValue(R3));
 
-        this.SetValueAtAddress(value0, value1, payload.param1AsMemAddr || payload.param1AsPointer);
+        this.flags.Record(value0, value1, value0, value1);
     }
 
-    private void InterruptInstructionHandler(InstructionPayload payload) {
-        short value0 = this.GetParamValue(payload.param0, payload.param0AsIntLit, payload.param0AsPointer, payload.param0AsMemAddr);
+    void ExecuteMove(short value, short address, boolean isMemAddr) {
+        if (this.tracer != null) this.tracer.Move(value, address);
 
-        this.interruptCode.SetValue(value0);
+        this.SetValueAtAddress(value, address, isMemAddr);
+    }
+
+    void ExecuteInterrupt(short code) {
+        this.registers.SetValue(R_INTERRUPT_CODE, code);
         this.interrupt = true;
     }
 
-    private short GetAddress(short value, boolean asPointer) {
-        if (asPointer) {
-            return this.GetValueAtAddress(value, false);
+    // registers being private to each core, only memory addresses are worth an atomic operation
+    void ExecuteCompareAndSwap(short value, short address, boolean isMemAddr) {
+        if (!isMemAddr) {
+            this.context.logger.errln("Compare and swap on a static address: " + address);
+            return;
         }
 
-        return value;
+        short expected = this.registers.GetValue(R_ACCU0);
+        short found = this.memoryMapper.CompareAndExchange(this.registers.GetValue(R_MEM_EXTENSION), address, expected, value);
+
+        if (this.tracer != null && found == expected) this.tracer.Move(value, address);
+
+        this.registers.SetValue(R_ACCU0, found);
+        this.registers.SetValue(R_ACCU1, (short) (found == expected ? 1 : 0));
     }
 
-    private short GetParamValue(short value, boolean asIntLit, boolean asPointer, boolean isMemAddr) {
-        if (asIntLit) return value;
-        else if (asPointer) {
-            short address = this.GetValueAtAddress(value, false);
-            return this.GetValueAtAddress(address, true);
-        }
-        else if (isMemAddr) {
-            return this.GetValueAtAddress(value, true);
+    void ExecuteInterProcessorInterrupt(short coreId, short code) {
+        if (coreId < 0 || coreId >= this.cores.length) {
+            this.context.logger.errln("Inter-processor interrupt to unknown core: " + coreId);
+            return;
         }
 
-        else return this.GetValueAtAddress(value, false);
+        // an interrupt not taken yet is replaced
+        this.cores[coreId].pendingInterProcessorInterrupt.set(code & 0xFFFF);
+        this.cores[coreId].interrupts.Wake();
+    }
+
+    void ExecuteWait() {
+        this.waiting = true;
+    }
+
+    /*
+        Bulk memory operations, run on the host a block at a time (see MemoryMapper_16.Copy).
+        The addresses are 32 bits like any memory access: MEM_EXTENSION, then the register. The length is unsigned.
+     */
+
+    void ExecuteMemoryCopy() {
+        this.memoryMapper.Copy(this.GetMemoryAddress(R0), this.GetMemoryAddress(R1), this.registers.GetValue(R2) & 0xFFFF);
+    }
+
+    void ExecuteMemorySet() {
+        this.memoryMapper.Fill(this.GetMemoryAddress(R1), this.registers.GetValue(R2) & 0xFFFF, this.registers.GetValue(R0));
     }
 
-    private short GetValueAtAddress(short address, boolean isMemAddr) {
+    void ExecuteMemoryCompare() {
+        int length = this.registers.GetValue(R2) & 0xFFFF;
+        int mismatch = this.memoryMapper.Compare(this.GetMemoryAddress(R0), this.GetMemoryAddress(R1), length);
+
+        // a range out of the memory never matches, differing from its first value
+        if (mismatch == MemoryMapper_16.RANGE_OUT_OF_MEMORY) mismatch = 0;
+
+        this.registers.SetValue(R_ACCU0, (short) (mismatch == MemoryMapper_16.RANGES_EQUAL ? length : mismatch));
+        this.registers.SetValue(R_ACCU1, (short) (mismatch == MemoryMapper_16.RANGES_EQUAL ? 1 : 0));
+    }
+
+    private int GetMemoryAddress(int register) {
+        return (this.registers.GetValue(R_MEM_EXTENSION) << 16) | (this.registers.GetValue(register) & 0xFFFF);
+    }
+
+    short GetValueAtAddress(short address, boolean isMemAddr) {
         if (isMemAddr) {
-            return this.memoryMapper.GetValue(this.memoryAddrExtension.GetValue(), address);
+            return this.memoryMapper.GetValue(this.registers.GetValue(R_MEM_EXTENSION), address);
         }
-        else if (address >= 0 && address < registers.length) {
-            return registers[address].GetValue();
+        else if (address >= 0 && address < this.registers.GetSize()) {
+            return this.ReadRegister(address);
         }
         else if (address == DataEndpoints.STACK.address) {
+            if (this.stack.IsEmpty()) {
+                this.Interrupt(EInterrupts.STACK_UNDERFLOW.code);
+                return 0;
+            }
             return this.stack.Pop();
         }
         else if (address == DataEndpoints.IN.address) {
             return this.input.GetValue();
         }
+        else if (address == DataEndpoints.CORE_ID.address) {
+            return (short) this.coreId;
+        }
+        else if (address == DataEndpoints.CORE_COUNT.address) {
+            return (short) this.cores.length;
+        }
+        else if (address == DataEndpoints.CYCLES_LOW.address) {
+            long cycles = this.GetCycles();
+            this.cyclesHigh = (short) (cycles >>> 16);
+            return (short) cycles;
+        }
+        else if (address == DataEndpoints.CYCLES_HIGH.address) {
+            return this.cyclesHigh;
+        }
+        else if (address == DataEndpoints.IRQ_MASK.address) {
+            return this.interrupts.GetMask();
+        }
+        else if (address == DataEndpoints.IRQ_VECTORS.address) {
+            return this.interrupts.GetVectors();
+        }
+        else if (address == DataEndpoints.IRQ_PENDING.address) {
+            return this.interrupts.GetPending();
+        }
 
         return 0;
     }
 
     private void SetValueAtAddress(short value, short address, boolean isMemAddr) {
         if (isMemAddr) {
-            this.memoryMapper.SetValue(this.memoryAddrExtension.GetValue(), address, value);
+            this.memoryMapper.SetValue(this.registers.GetValue(R_MEM_EXTENSION), address, value);
         }
-        else if (address >= 0 && address < registers.length) {
-            registers[address].SetValue(value);
+        else if (address >= 0 && address < this.registers.GetSize()) {
+            if (address == R_FLAGS) this.flags.Discard();
+            this.registers.SetValue(address, value);
         }
         else if (address == DataEndpoints.STACK.address) {
-            this.stack.Push(value);
+            if (this.stack.IsFull()) this.Interrupt(EInterrupts.STACK_OVERFLOW.code);
+            else this.stack.Push(value);
         }
         else if (address == DataEndpoints.OUT.address) {
             this.output.SetValue(value);
         }
+        else if (address == DataEndpoints.IRQ_MASK.address) {
+            this.interrupts.SetMask(value);
+        }
+        else if (address == DataEndpoints.IRQ_VECTORS.address) {
+            this.interrupts.SetVectors(value);
+        }
+        else if (address == DataEndpoints.IRQ_PENDING.address) {
+            this.interrupts.Clear(value);
+        }
         else {
-            Context.INSTANCE.logger.errln("value " + value + " going nowhere: address = " + address);
+            this.context.logger.errln("value " + value + " going nowhere: address = " + address);
         }
     }
 
     public void Interrupt(short interruptCode) {
         this.interrupt = true;
-        this.interruptCode.SetValue(interruptCode);
+        this.waiting = false;
+        this.registers.SetValue(R_INTERRUPT_CODE, interruptCode);
+    }
+
+    // a fault raised by the last instruction (a stack overflow or underflow) is taken next, compiled and fused code stop there
+    boolean IsInterrupted() {
+        return this.interrupt;
+    }
+
+    // the cycle timers due fire first, then the inter-processor interrupt, then the interrupt lines
+    private void TakePendingInterrupts() {
+        if (this.cycleCount >= this.interrupts.GetDeadline()) this.interrupts.Tick(this.cycleCount);
+        if (this.interrupt) return;
+
+        if (this.pendingInterProcessorInterrupt.get() != NO_INTER_PROCESSOR_INTERRUPT) this.TakeInterProcessorInterrupt();
+        else if (this.interrupts.HasPending()) this.TakeInterruptLine();
+    }
+
+    /*
+        Unlike software interrupts, the interrupted code resumes once the handler pops the execution pointer back.
+        On a full stack, the inter-processor interrupt is dropped for a stack overflow.
+     */
+    private void TakeInterProcessorInterrupt() {
+        int code = this.pendingInterProcessorInterrupt.getAndSet(NO_INTER_PROCESSOR_INTERRUPT);
+
+        if (this.stack.IsFull()) {
+            this.Interrupt(EInterrupts.STACK_OVERFLOW.code);
+            return;
+        }
+
+        this.stack.Push(this.registers.GetValue(R_EXPTR));
+        this.Interrupt((short) code);
+    }
+
+    /*
+        Pushes the execution pointer, then the mask, and masks the line taken and every line of a lower priority.
+        The handler is the entry of the line in the vector table, or MEM_INTERRUPT like a software interrupt without one.
+        It returns with MOVE STACK -> IRQ_MASK, MOVE STACK -> R_EXPTR.
+        On a stack without room for both, the line is dropped for a stack overflow.
+     */
+    private void TakeInterruptLine() {
+        int line = this.interrupts.Take();
+        this.waiting = false;
+
+        if (!this.stack.HasRoom(2)) {
+            this.Interrupt(EInterrupts.STACK_OVERFLOW.code);
+            return;
+        }
+
+        short mask = this.interrupts.GetMask();
+        this.stack.Push(this.registers.GetValue(R_EXPTR));
+        this.stack.Push(mask);
+        this.interrupts.SetMask((short) (mask | (0xFFFF << line)));
+
+        short code = (short) (EInterrupts.IRQ.code + line);
+        int vectors = this.interrupts.GetVectors() & 0xFFFF;
+        if (vectors == 0) {
+            this.Interrupt(code);
+            return;
+        }
+
+        this.registers.SetValue(R_INTERRUPT_CODE, code);
+        this.registers.SetValue(R_EXPTR, this.memoryMapper.GetValue(vectors + line));
+    }
+
+    /*
+        The cycles run since reset, the interrupt servicing and idle ones included, as counted by RunUntil.
+        Compiled blocks and fused instructions only count theirs once done: the JIT engine tells how far the running block went,
+        and fused instructions never read it (see SuperInstructions_16).
+     */
+    private long GetCycles() {
+        return this.jit == null ? this.cycleCount : this.cycleCount + this.jit.GetBlockProgress(this.registers.GetValue(R_EXPTR));
+    }
+
+    public InterruptController_16 GetInterruptController() {
+        return this.interrupts;
+    }
+
+    // the devices of the memory raise the lines of this core
+    private void ConnectDevices() {
+        for (MemoryBlock_16 block : this.memoryMapper.GetMemoryBlocks()) {
+            if (block instanceof MmioBlock_16 mmio) mmio.Connect(this.interrupts);
+        }
+    }
+
+    private void DisconnectDevices() {
+        for (MemoryBlock_16 block : this.memoryMapper.GetMemoryBlocks()) {
+            if (block instanceof MmioBlock_16 mmio) mmio.Disconnect(this.interrupts);
+        }
     }
 
     private void ClearInterrupt() {
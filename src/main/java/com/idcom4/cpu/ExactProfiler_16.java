@@ -0,0 +1,110 @@
+package com.idcom4.cpu;
+
+import com.idcom4.cpu.CPU_16.DecodedInstruction;
+import com.idcom4.cpu.CPU_16.Masks;
+import com.idcom4.cpu.CPU_16.OPCodes;
+import com.idcom4.utils.FileUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.idcom4.cpu.ProfileReport_16.*;
+
+/*
+    Counts every instruction the CPU executes, per address and per opcode.
+
+    There is no call stack per instruction, so each address is attributed to the function it belongs to:
+    the closest function entry before it, function entries being the targets of the calls seen so far.
+    The collapsed stacks are "fn_XXXX;0xYYYY" and the opcode counts go to an extra <prefix>.opcodes.csv.
+ */
+public class ExactProfiler_16 implements IProfiler_16 {
+
+    // how deep a call's return address is looked for in the stack
+    private static final int RETURN_ADDRESS_DEPTH = 16;
+    private static final int OPCODE_COUNT = Masks.OPCODE.value + 1;
+
+    private final CPU_16 cpu;
+
+    private final long[] addressCounts = new long[SIZE];
+    private final long[] opcodeCounts = new long[OPCODE_COUNT];
+    private final boolean[] functionEntries = new boolean[SIZE];
+
+    ExactProfiler_16(CPU_16 cpu) {
+        this.cpu = cpu;
+        this.functionEntries[ENTRY_FUNCTION] = true;
+    }
+
+    @Override
+    public void Start() {
+        this.cpu.SetExactProfiler(this);
+    }
+
+    @Override
+    public void Stop() {
+        this.cpu.SetExactProfiler(null);
+    }
+
+    void Record(short ptr, DecodedInstruction instruction) {
+        this.addressCounts[ptr & 0xFFFF]++;
+        this.opcodeCounts[instruction.opcode() & Masks.OPCODE.value]++;
+
+        // a move into the execution pointer is a call if its return address was just pushed
+        int word = instruction.rawOpcode() & 0xFFFF;
+        if (CPU_16.IsMoveToExecutionPointer(word, instruction.param1())
+                && InstructionHandlers_16.GetParam0Mode(word) == InstructionHandlers_16.IMMEDIATE
+                && this.IsOnStack((ptr + INSTRUCTION_SIZE) & 0xFFFF)) {
+            this.functionEntries[instruction.param0() & 0xFFFF] = true;
+        }
+    }
+
+    private boolean IsOnStack(int returnAddress) {
+        int depth = this.cpu.GetStackDepth();
+        for (int i = depth - 1; i >= Math.max(0, depth - RETURN_ADDRESS_DEPTH); i--) {
+            if ((this.cpu.GetStackValue(i) & 0xFFFF) == returnAddress) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void Export(String filePrefix) {
+        int[] functions = new int[SIZE];
+        Map<String, Long> stacks = new HashMap<>();
+
+        int function = NO_FUNCTION;
+        for (int address = 0; address < SIZE; address++) {
+            if (this.functionEntries[address]) function = address;
+            functions[address] = function;
+
+            if (this.addressCounts[address] > 0)
+                stacks.put(FunctionFrame(function) + ";" + AddressFrame(address), this.addressCounts[address]);
+        }
+
+        WriteCollapsed(filePrefix + ".collapsed", stacks);
+        WriteHotspots(filePrefix + ".csv", this.addressCounts, functions);
+        this.WriteOpcodes(filePrefix + ".opcodes.csv");
+    }
+
+    private void WriteOpcodes(String fileName) {
+        long total = Arrays.stream(this.opcodeCounts).sum();
+
+        StringBuilder content = new StringBuilder("opcode,name,count,percent\n");
+        for (int opcode = 0; opcode < OPCODE_COUNT; opcode++) {
+            if (this.opcodeCounts[opcode] == 0) continue;
+
+            content.append(String.format(Locale.ROOT, "0x%03x,%s,%d,%.2f\n", opcode, OpcodeName(opcode), this.opcodeCounts[opcode], 100.0 * this.opcodeCounts[opcode] / total));
+        }
+
+        FileUtils.WriteFile(fileName, content.toString());
+    }
+
+    private static String OpcodeName(int opcode) {
+        for (OPCodes op : OPCodes.values()) {
+            if (op.code == opcode) return op.name();
+        }
+
+        return "UNKNOWN";
+    }
+}
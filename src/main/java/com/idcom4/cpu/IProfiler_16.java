@@ -0,0 +1,34 @@
+package com.idcom4.cpu;
+
+/*
+    Guest program profilers, exporting at Export(prefix):
+    - <prefix>.collapsed:   collapsed stacks ("frame;frame;frame count" lines), for flame graph tools
+    - <prefix>.csv:         hotspots, the execution count of each address
+
+    Frames are named after addresses: fn_XXXX for the code called at XXXX, 0xXXXX for an executed instruction.
+ */
+public interface IProfiler_16 {
+
+    enum EProfilerModes {
+        EXACT("exact"),         // counts every instruction executed, on the interpreter
+        SAMPLING("sampling");   // looks at the execution pointer and the stack at a fixed interval, from another thread
+
+        public final String name;
+
+        EProfilerModes(String name) {
+            this.name = name;
+        }
+
+        public static EProfilerModes fromName(String name) {
+            for (EProfilerModes mode : EProfilerModes.values()) {
+                if (mode.name.equals(name)) return mode;
+            }
+
+            return null;
+        }
+    }
+
+    void Start();
+    void Stop();
+    void Export(String filePrefix);
+}
@@ -0,0 +1,164 @@
+package com.idcom4.cpu;
+
+import com.idcom4.cpu.SuperInstructions_16.FusedInstruction;
+import com.idcom4.cpu.components.IMemoryWriteListener;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/*
+    Holds the decoded instructions, indexed by the execution pointer they were fetched from.
+
+    An instruction spans 3 consecutive addresses (opcode, param0, param1),
+    so a write at address X invalidates the instructions starting at X - 2, X - 1 and X.
+    Fused instructions span up to SuperInstructions_16.MAX_LENGTH instructions, and are invalidated the same way.
+
+    Both tables are split in pages, allocated on the first instruction put in them:
+    a program only touching a few pages of code keeps the cache small, which matters with thousands of CPUs.
+
+    A concurrent cache (see CPU_16.CreateCores) is also invalidated by the other cores, while its core decodes:
+    an instruction decoded before a remote write could be put after that write cleared its address, and stay there.
+    So every write counts, and an instruction is only kept if no write happened since its decoding started
+    (GetWrites before decoding, then Put). Both sides access the tables with volatile semantics:
+    - the core puts the instruction, then reads the count, and clears the instruction again if it changed
+    - a writer writes the memory, increments the count, then clears the instructions it finds
+    Either the core sees the new count, or the writer sees the instruction.
+    Single core caches don't count the writes, nor pay for the fences.
+ */
+class InstructionCache_16 implements IMemoryWriteListener {
+
+    private static final int SIZE = 0x10000;
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int INSTRUCTION_SIZE = 3;
+    private static final int FUSED_SIZE = SuperInstructions_16.MAX_LENGTH * INSTRUCTION_SIZE;
+
+    private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle WRITES;
+
+    static {
+        try {
+            WRITES = MethodHandles.lookup().findVarHandle(InstructionCache_16.class, "writes", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final boolean concurrent;
+    // the writes seen, concurrent caches only
+    private volatile int writes = 0;
+
+    private final CPU_16.DecodedInstruction[][] instructions = new CPU_16.DecodedInstruction[SIZE >> PAGE_BITS][];
+    private final FusedInstruction[][] fusedInstructions = new FusedInstruction[SIZE >> PAGE_BITS][];
+
+    InstructionCache_16(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    // read before decoding what is put, see Put and PutFused
+    public int GetWrites() {
+        return this.concurrent ? this.writes : 0;
+    }
+
+    public CPU_16.DecodedInstruction Get(short address) {
+        CPU_16.DecodedInstruction[] page = this.instructions[(address & 0xFFFF) >>> PAGE_BITS];
+        return page == null ? null : page[address & PAGE_MASK];
+    }
+
+    public void Put(short address, CPU_16.DecodedInstruction instruction, int writes) {
+        int pageIndex = (address & 0xFFFF) >>> PAGE_BITS;
+        if (this.instructions[pageIndex] == null) this.SetPage(this.instructions, pageIndex, new CPU_16.DecodedInstruction[PAGE_SIZE]);
+
+        this.SetChecked(this.instructions[pageIndex], address & PAGE_MASK, instruction, writes);
+    }
+
+    public FusedInstruction GetFused(short address) {
+        FusedInstruction[] page = this.fusedInstructions[(address & 0xFFFF) >>> PAGE_BITS];
+        return page == null ? null : page[address & PAGE_MASK];
+    }
+
+    public void PutFused(short address, FusedInstruction instruction, int writes) {
+        int pageIndex = (address & 0xFFFF) >>> PAGE_BITS;
+        if (this.fusedInstructions[pageIndex] == null) this.SetPage(this.fusedInstructions, pageIndex, new FusedInstruction[PAGE_SIZE]);
+
+        this.SetChecked(this.fusedInstructions[pageIndex], address & PAGE_MASK, instruction, writes);
+    }
+
+    private void SetPage(Object[][] pages, int index, Object[] page) {
+        if (this.concurrent) ELEMENTS.setVolatile(pages, index, page);
+        else pages[index] = page;
+    }
+
+    // clears the value again if a write happened since the given count was read
+    private void SetChecked(Object[] page, int index, Object value, int writes) {
+        if (!this.concurrent) {
+            page[index] = value;
+            return;
+        }
+
+        ELEMENTS.setVolatile(page, index, value);
+        if (this.writes != writes) ELEMENTS.setVolatile(page, index, null);
+    }
+
+    private Object[] GetPage(Object[][] pages, int index) {
+        return this.concurrent ? (Object[]) ELEMENTS.getVolatile(pages, index) : pages[index];
+    }
+
+    private void Clear(Object[] page, int index) {
+        if (page[index] == null) return;
+
+        if (this.concurrent) ELEMENTS.setVolatile(page, index, null);
+        else page[index] = null;
+    }
+
+    @Override
+    public void OnWrite(int address) {
+        // the execution pointer is 16 bits, higher addresses can't hold code
+        if (address < 0 || address >= SIZE) return;
+        if (this.concurrent) WRITES.getAndAdd(this, 1);
+
+        for (int i = 0; i < INSTRUCTION_SIZE; i++) {
+            Object[] page = this.GetPage(this.instructions, ((address - i) & 0xFFFF) >>> PAGE_BITS);
+            if (page != null) this.Clear(page, (address - i) & PAGE_MASK);
+        }
+
+        for (int i = 0; i < FUSED_SIZE; i++) {
+            Object[] page = this.GetPage(this.fusedInstructions, ((address - i) & 0xFFFF) >>> PAGE_BITS);
+            if (page != null) this.Clear(page, (address - i) & PAGE_MASK);
+        }
+    }
+
+    // clears whole page slices instead of the addresses one by one
+    @Override
+    public void OnWriteRange(int address, int length) {
+        if (address < 0 || address >= SIZE) return;
+        if (this.concurrent) WRITES.getAndAdd(this, 1);
+
+        int end = (int) Math.min(SIZE, (long) address + length);
+        this.Clear(this.instructions, address - INSTRUCTION_SIZE + 1, end);
+        this.Clear(this.fusedInstructions, address - FUSED_SIZE + 1, end);
+    }
+
+    // from may be negative, the addresses wrap around like the execution pointer
+    private void Clear(Object[][] pages, int from, int to) {
+        int address = from;
+        while (address < to) {
+            int index = address & 0xFFFF;
+            int count = Math.min(PAGE_SIZE - (index & PAGE_MASK), to - address);
+
+            Object[] page = this.GetPage(pages, index >>> PAGE_BITS);
+            if (page != null) {
+                int start = index & PAGE_MASK;
+                if (this.concurrent) {
+                    for (int i = start; i < start + count; i++) this.Clear(page, i);
+                } else {
+                    Arrays.fill(page, start, start + count, null);
+                }
+            }
+
+            address += count;
+        }
+    }
+}
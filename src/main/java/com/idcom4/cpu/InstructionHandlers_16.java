@@ -0,0 +1,557 @@
+package com.idcom4.cpu;
+
+import com.idcom4.cpu.CPU_16.IInstructionHandler;
+import com.idcom4.cpu.CPU_16.Masks;
+import com.idcom4.cpu.CPU_16.OPCodes;
+
+/*
+    Instruction handlers specialized for each addressing mode combination.
+
+    The dispatch table is indexed by the raw 16 bit opcode word (instruction | flags),
+    so the operand modes are resolved once when the table is built,
+    and each handler runs straight-line code without testing any flag.
+
+    OPERAND MODES:
+    - Static:       param is a static address (registers, stack, IO)
+    - Memory:       param is a memory address
+    - Pointer:      param is a static address holding a memory address
+    - Immediate:    param is the value itself
+ */
+final class InstructionHandlers_16 {
+
+    enum EKinds {
+        MATH,
+        JUMP,
+        MOVE,
+        INTERRUPT,
+        COMPARE_AND_SWAP,
+        INTER_PROCESSOR_INTERRUPT,
+        MEMORY_COPY,
+        MEMORY_SET,
+        MEMORY_COMPARE,
+        WAIT,
+        UNKNOWN
+    }
+
+    static final int STATIC = 0;
+    static final int MEMORY = 1;
+    static final int POINTER = 2;
+    static final int IMMEDIATE = 3;
+
+    private static final short STACK = CPU_16.DataEndpoints.STACK.address;
+    private static final short CYCLES_LOW = CPU_16.DataEndpoints.CYCLES_LOW.address;
+
+    private static final String[] MODE_NAMES = { "Static", "Memory", "Pointer", "Immediate" };
+
+    private static final IInstructionHandler[][] MATH_HANDLERS = {
+            { InstructionHandlers_16::MathStaticStatic, InstructionHandlers_16::MathStaticMemory, InstructionHandlers_16::MathStaticPointer, InstructionHandlers_16::MathStaticImmediate },
+            { InstructionHandlers_16::MathMemoryStatic, InstructionHandlers_16::MathMemoryMemory, InstructionHandlers_16::MathMemoryPointer, InstructionHandlers_16::MathMemoryImmediate },
+            { InstructionHandlers_16::MathPointerStatic, InstructionHandlers_16::MathPointerMemory, InstructionHandlers_16::MathPointerPointer, InstructionHandlers_16::MathPointerImmediate },
+            { InstructionHandlers_16::MathImmediateStatic, InstructionHandlers_16::MathImmediateMemory, InstructionHandlers_16::MathImmediatePointer, InstructionHandlers_16::MathImmediateImmediate }
+    };
+
+    private static final IInstructionHandler[][] JUMP_HANDLERS = {
+            { InstructionHandlers_16::JumpStaticStatic, InstructionHandlers_16::JumpStaticMemory, InstructionHandlers_16::JumpStaticPointer, InstructionHandlers_16::JumpStaticImmediate },
+            { InstructionHandlers_16::JumpMemoryStatic, InstructionHandlers_16::JumpMemoryMemory, InstructionHandlers_16::JumpMemoryPointer, InstructionHandlers_16::JumpMemoryImmediate },
+            { InstructionHandlers_16::JumpPointerStatic, InstructionHandlers_16::JumpPointerMemory, InstructionHandlers_16::JumpPointerPointer, InstructionHandlers_16::JumpPointerImmediate },
+            { InstructionHandlers_16::JumpImmediateStatic, InstructionHandlers_16::JumpImmediateMemory, InstructionHandlers_16::JumpImmediatePointer, InstructionHandlers_16::JumpImmediateImmediate }
+    };
+
+    private static final IInstructionHandler[][] MOVE_HANDLERS = {
+            { InstructionHandlers_16::MoveStaticStatic, InstructionHandlers_16::MoveStaticMemory, InstructionHandlers_16::MoveStaticPointer },
+            { InstructionHandlers_16::MoveMemoryStatic, InstructionHandlers_16::MoveMemoryMemory, InstructionHandlers_16::MoveMemoryPointer },
+            { InstructionHandlers_16::MovePointerStatic, InstructionHandlers_16::MovePointerMemory, InstructionHandlers_16::MovePointerPointer },
+            { InstructionHandlers_16::MoveImmediateStatic, InstructionHandlers_16::MoveImmediateMemory, InstructionHandlers_16::MoveImmediatePointer }
+    };
+
+    private static final IInstructionHandler[] INTERRUPT_HANDLERS = {
+            InstructionHandlers_16::InterruptStatic, InstructionHandlers_16::InterruptMemory, InstructionHandlers_16::InterruptPointer, InstructionHandlers_16::InterruptImmediate
+    };
+
+    private static final IInstructionHandler[][] COMPARE_AND_SWAP_HANDLERS = {
+            { InstructionHandlers_16::CompareAndSwapStaticStatic, InstructionHandlers_16::CompareAndSwapStaticMemory, InstructionHandlers_16::CompareAndSwapStaticPointer },
+            { InstructionHandlers_16::CompareAndSwapMemoryStatic, InstructionHandlers_16::CompareAndSwapMemoryMemory, InstructionHandlers_16::CompareAndSwapMemoryPointer },
+            { InstructionHandlers_16::CompareAndSwapPointerStatic, InstructionHandlers_16::CompareAndSwapPointerMemory, InstructionHandlers_16::CompareAndSwapPointerPointer },
+            { InstructionHandlers_16::CompareAndSwapImmediateStatic, InstructionHandlers_16::CompareAndSwapImmediateMemory, InstructionHandlers_16::CompareAndSwapImmediatePointer }
+    };
+
+    private static final IInstructionHandler[][] INTER_PROCESSOR_INTERRUPT_HANDLERS = {
+            { InstructionHandlers_16::InterProcessorInterruptStaticStatic, InstructionHandlers_16::InterProcessorInterruptStaticMemory, InstructionHandlers_16::InterProcessorInterruptStaticPointer, InstructionHandlers_16::InterProcessorInterruptStaticImmediate },
+            { InstructionHandlers_16::InterProcessorInterruptMemoryStatic, InstructionHandlers_16::InterProcessorInterruptMemoryMemory, InstructionHandlers_16::InterProcessorInterruptMemoryPointer, InstructionHandlers_16::InterProcessorInterruptMemoryImmediate },
+            { InstructionHandlers_16::InterProcessorInterruptPointerStatic, InstructionHandlers_16::InterProcessorInterruptPointerMemory, InstructionHandlers_16::InterProcessorInterruptPointerPointer, InstructionHandlers_16::InterProcessorInterruptPointerImmediate },
+            { InstructionHandlers_16::InterProcessorInterruptImmediateStatic, InstructionHandlers_16::InterProcessorInterruptImmediateMemory, InstructionHandlers_16::InterProcessorInterruptImmediatePointer, InstructionHandlers_16::InterProcessorInterruptImmediateImmediate }
+    };
+
+    static final IInstructionHandler[] DISPATCH_TABLE = BuildDispatchTable();
+
+    private InstructionHandlers_16() {}
+
+    private static IInstructionHandler[] BuildDispatchTable() {
+        IInstructionHandler[] table = new IInstructionHandler[0x10000];
+
+        for (int word = 0; word < table.length; word++) {
+            int mode0 = GetParam0Mode(word);
+            int mode1 = GetParam1Mode(word);
+
+            table[word] = switch (GetKind(word)) {
+                case MATH ->        MATH_HANDLERS[mode0][mode1];
+                case JUMP ->        JUMP_HANDLERS[mode0][mode1];
+                case MOVE ->        MOVE_HANDLERS[mode0][GetDestinationMode(word)];
+                case INTERRUPT ->   INTERRUPT_HANDLERS[mode0];
+                case COMPARE_AND_SWAP ->            COMPARE_AND_SWAP_HANDLERS[mode0][GetDestinationMode(word)];
+                case INTER_PROCESSOR_INTERRUPT ->   INTER_PROCESSOR_INTERRUPT_HANDLERS[mode0][mode1];
+                // operands in registers, the params are unused
+                case MEMORY_COPY ->     InstructionHandlers_16::MemoryCopy;
+                case MEMORY_SET ->      InstructionHandlers_16::MemorySet;
+                case MEMORY_COMPARE ->  InstructionHandlers_16::MemoryCompare;
+                case WAIT ->        InstructionHandlers_16::Wait;
+                case UNKNOWN ->     InstructionHandlers_16::Unknown;
+            };
+        }
+
+        return table;
+    }
+
+    // name of the static method the dispatch table holds for this opcode word, so compiled code can call it directly
+    static String GetHandlerName(int word) {
+        String mode0 = MODE_NAMES[GetParam0Mode(word)];
+        String mode1 = MODE_NAMES[GetParam1Mode(word)];
+
+        return switch (GetKind(word)) {
+            case MATH ->        "Math" + mode0 + mode1;
+            case JUMP ->        "Jump" + mode0 + mode1;
+            case MOVE ->        "Move" + mode0 + MODE_NAMES[GetDestinationMode(word)];
+            case INTERRUPT ->   "Interrupt" + mode0;
+            case COMPARE_AND_SWAP ->            "CompareAndSwap" + mode0 + MODE_NAMES[GetDestinationMode(word)];
+            case INTER_PROCESSOR_INTERRUPT ->   "InterProcessorInterrupt" + mode0 + mode1;
+            case MEMORY_COPY ->     "MemoryCopy";
+            case MEMORY_SET ->      "MemorySet";
+            case MEMORY_COMPARE ->  "MemoryCompare";
+            case WAIT ->        "Wait";
+            case UNKNOWN ->     "Unknown";
+        };
+    }
+
+    static EKinds GetKind(int word) {
+        int opcode = word & Masks.OPCODE.value;
+
+        if (opcode < OPCodes.MATH_OPS.code) return EKinds.MATH;
+        if (opcode >= OPCodes.JMP_EQ.code && opcode <= OPCodes.JMP_GREATER_EQ.code) return EKinds.JUMP;
+        if (opcode == OPCodes.MOVE.code) return EKinds.MOVE;
+        if (opcode == OPCodes.INTERRUPT.code) return EKinds.INTERRUPT;
+        if (opcode == OPCodes.COMPARE_AND_SWAP.code) return EKinds.COMPARE_AND_SWAP;
+        if (opcode == OPCodes.INTER_PROCESSOR_INTERRUPT.code) return EKinds.INTER_PROCESSOR_INTERRUPT;
+        if (opcode == OPCodes.MEMORY_COPY.code) return EKinds.MEMORY_COPY;
+        if (opcode == OPCodes.MEMORY_SET.code) return EKinds.MEMORY_SET;
+        if (opcode == OPCodes.MEMORY_COMPARE.code) return EKinds.MEMORY_COMPARE;
+        if (opcode == OPCodes.WAIT.code) return EKinds.WAIT;
+        return EKinds.UNKNOWN;
+    }
+
+    static int GetParam0Mode(int word) {
+        return GetOperandMode(word, Masks.PARAM0_AS_INT_LIT, Masks.PARAM0_AS_POINTER, Masks.PARAM0_AS_MEMORY_ADDR);
+    }
+
+    static int GetParam1Mode(int word) {
+        return GetOperandMode(word, Masks.PARAM1_AS_INT_LIT, Masks.PARAM1_AS_POINTER, Masks.PARAM1_AS_MEMORY_ADDR);
+    }
+
+    // the int literal flag is meaningless for a move (or compare and swap) destination
+    static int GetDestinationMode(int word) {
+        return GetParam1Mode(word & ~Masks.PARAM1_AS_INT_LIT.value);
+    }
+
+    // whether the instruction may push or pop, and so raise a stack fault (an overestimate for unused params)
+    static boolean AccessesStack(int word, short param0, short param1) {
+        return Accesses(word, param0, param1, STACK);
+    }
+
+    // whether the instruction may read the cycle counter (see CPU_16.GetCycles)
+    static boolean ReadsCycles(int word, short param0, short param1) {
+        return Accesses(word, param0, param1, CYCLES_LOW);
+    }
+
+    // whether the instruction may access the static address, directly or through a pointer
+    private static boolean Accesses(int word, short param0, short param1, short address) {
+        EKinds kind = GetKind(word);
+        if (kind == EKinds.UNKNOWN || IgnoresParams(kind)) return false;
+
+        int mode1 = kind == EKinds.MOVE || kind == EKinds.COMPARE_AND_SWAP ? GetDestinationMode(word) : GetParam1Mode(word);
+
+        return (param0 == address && IsStaticAccess(GetParam0Mode(word)))
+                || (param1 == address && kind != EKinds.INTERRUPT && IsStaticAccess(mode1));
+    }
+
+    // the bulk memory instructions take their operands from registers, never from the stack, and WAIT has none
+    private static boolean IgnoresParams(EKinds kind) {
+        return kind == EKinds.MEMORY_COPY || kind == EKinds.MEMORY_SET || kind == EKinds.MEMORY_COMPARE || kind == EKinds.WAIT;
+    }
+
+    private static boolean IsStaticAccess(int mode) {
+        return mode == STATIC || mode == POINTER;
+    }
+
+    // same precedence as the original flag tests: int literal, then pointer, then memory address
+    private static int GetOperandMode(int word, Masks intLit, Masks pointer, Masks memAddr) {
+        if ((word & intLit.value) != 0) return IMMEDIATE;
+        if ((word & pointer.value) != 0) return POINTER;
+        if ((word & memAddr.value) != 0) return MEMORY;
+        return STATIC;
+    }
+
+    /* OPERANDS */
+
+    private static short Static(CPU_16 cpu, short param) {
+        return cpu.GetValueAtAddress(param, false);
+    }
+
+    private static short Memory(CPU_16 cpu, short param) {
+        return cpu.GetValueAtAddress(param, true);
+    }
+
+    private static short Pointer(CPU_16 cpu, short param) {
+        return cpu.GetValueAtAddress(cpu.GetValueAtAddress(param, false), true);
+    }
+
+    /* UNKNOWN */
+
+    static void Unknown(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteUnknown(opcode);
+    }
+
+    /* MATH */
+
+    static void MathStaticStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Static(cpu, param0), Static(cpu, param1));
+    }
+
+    static void MathStaticMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Static(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void MathStaticPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Static(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void MathStaticImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Static(cpu, param0), param1);
+    }
+
+    static void MathMemoryStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Memory(cpu, param0), Static(cpu, param1));
+    }
+
+    static void MathMemoryMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Memory(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void MathMemoryPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Memory(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void MathMemoryImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Memory(cpu, param0), param1);
+    }
+
+    static void MathPointerStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Pointer(cpu, param0), Static(cpu, param1));
+    }
+
+    static void MathPointerMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Pointer(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void MathPointerPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Pointer(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void MathPointerImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, Pointer(cpu, param0), param1);
+    }
+
+    static void MathImmediateStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, param0, Static(cpu, param1));
+    }
+
+    static void MathImmediateMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, param0, Memory(cpu, param1));
+    }
+
+    static void MathImmediatePointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, param0, Pointer(cpu, param1));
+    }
+
+    static void MathImmediateImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMath(opcode, param0, param1);
+    }
+
+    /* JUMP */
+
+    static void JumpStaticStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Static(cpu, param0), Static(cpu, param1));
+    }
+
+    static void JumpStaticMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Static(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void JumpStaticPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Static(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void JumpStaticImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Static(cpu, param0), param1);
+    }
+
+    static void JumpMemoryStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Memory(cpu, param0), Static(cpu, param1));
+    }
+
+    static void JumpMemoryMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Memory(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void JumpMemoryPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Memory(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void JumpMemoryImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Memory(cpu, param0), param1);
+    }
+
+    static void JumpPointerStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Pointer(cpu, param0), Static(cpu, param1));
+    }
+
+    static void JumpPointerMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Pointer(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void JumpPointerPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Pointer(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void JumpPointerImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, Pointer(cpu, param0), param1);
+    }
+
+    static void JumpImmediateStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, param0, Static(cpu, param1));
+    }
+
+    static void JumpImmediateMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, param0, Memory(cpu, param1));
+    }
+
+    static void JumpImmediatePointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, param0, Pointer(cpu, param1));
+    }
+
+    static void JumpImmediateImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteJump(opcode, param0, param1);
+    }
+
+    /* MOVE */
+
+    static void MoveStaticStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Static(cpu, param0), param1, false);
+    }
+
+    static void MoveStaticMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Static(cpu, param0), param1, true);
+    }
+
+    static void MoveStaticPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Static(cpu, param0), Static(cpu, param1), true);
+    }
+
+    static void MoveMemoryStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Memory(cpu, param0), param1, false);
+    }
+
+    static void MoveMemoryMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Memory(cpu, param0), param1, true);
+    }
+
+    static void MoveMemoryPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Memory(cpu, param0), Static(cpu, param1), true);
+    }
+
+    static void MovePointerStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Pointer(cpu, param0), param1, false);
+    }
+
+    static void MovePointerMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Pointer(cpu, param0), param1, true);
+    }
+
+    static void MovePointerPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(Pointer(cpu, param0), Static(cpu, param1), true);
+    }
+
+    static void MoveImmediateStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(param0, param1, false);
+    }
+
+    static void MoveImmediateMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(param0, param1, true);
+    }
+
+    static void MoveImmediatePointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMove(param0, Static(cpu, param1), true);
+    }
+
+    /* INTERRUPT */
+
+    static void InterruptStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterrupt(Static(cpu, param0));
+    }
+
+    static void InterruptMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterrupt(Memory(cpu, param0));
+    }
+
+    static void InterruptPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterrupt(Pointer(cpu, param0));
+    }
+
+    static void InterruptImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterrupt(param0);
+    }
+
+    /* COMPARE AND SWAP */
+
+    static void CompareAndSwapStaticStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Static(cpu, param0), param1, false);
+    }
+
+    static void CompareAndSwapStaticMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Static(cpu, param0), param1, true);
+    }
+
+    static void CompareAndSwapStaticPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Static(cpu, param0), Static(cpu, param1), true);
+    }
+
+    static void CompareAndSwapMemoryStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Memory(cpu, param0), param1, false);
+    }
+
+    static void CompareAndSwapMemoryMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Memory(cpu, param0), param1, true);
+    }
+
+    static void CompareAndSwapMemoryPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Memory(cpu, param0), Static(cpu, param1), true);
+    }
+
+    static void CompareAndSwapPointerStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Pointer(cpu, param0), param1, false);
+    }
+
+    static void CompareAndSwapPointerMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Pointer(cpu, param0), param1, true);
+    }
+
+    static void CompareAndSwapPointerPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(Pointer(cpu, param0), Static(cpu, param1), true);
+    }
+
+    static void CompareAndSwapImmediateStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(param0, param1, false);
+    }
+
+    static void CompareAndSwapImmediateMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(param0, param1, true);
+    }
+
+    static void CompareAndSwapImmediatePointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteCompareAndSwap(param0, Static(cpu, param1), true);
+    }
+
+    /* INTER-PROCESSOR INTERRUPT */
+
+    static void InterProcessorInterruptStaticStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Static(cpu, param0), Static(cpu, param1));
+    }
+
+    static void InterProcessorInterruptStaticMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Static(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void InterProcessorInterruptStaticPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Static(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void InterProcessorInterruptStaticImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Static(cpu, param0), param1);
+    }
+
+    static void InterProcessorInterruptMemoryStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Memory(cpu, param0), Static(cpu, param1));
+    }
+
+    static void InterProcessorInterruptMemoryMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Memory(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void InterProcessorInterruptMemoryPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Memory(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void InterProcessorInterruptMemoryImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Memory(cpu, param0), param1);
+    }
+
+    static void InterProcessorInterruptPointerStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Pointer(cpu, param0), Static(cpu, param1));
+    }
+
+    static void InterProcessorInterruptPointerMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Pointer(cpu, param0), Memory(cpu, param1));
+    }
+
+    static void InterProcessorInterruptPointerPointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Pointer(cpu, param0), Pointer(cpu, param1));
+    }
+
+    static void InterProcessorInterruptPointerImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(Pointer(cpu, param0), param1);
+    }
+
+    static void InterProcessorInterruptImmediateStatic(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(param0, Static(cpu, param1));
+    }
+
+    static void InterProcessorInterruptImmediateMemory(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(param0, Memory(cpu, param1));
+    }
+
+    static void InterProcessorInterruptImmediatePointer(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(param0, Pointer(cpu, param1));
+    }
+
+    static void InterProcessorInterruptImmediateImmediate(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteInterProcessorInterrupt(param0, param1);
+    }
+
+    /* BULK MEMORY */
+
+    static void MemoryCopy(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMemoryCopy();
+    }
+
+    static void MemorySet(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMemorySet();
+    }
+
+    static void MemoryCompare(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteMemoryCompare();
+    }
+
+    /* WAIT */
+
+    static void Wait(CPU_16 cpu, short opcode, short param0, short param1) {
+        cpu.ExecuteWait();
+    }
+}
@@ -0,0 +1,255 @@
+package com.idcom4.cpu;
+
+import com.idcom4.Context;
+import com.idcom4.cpu.BlockCompiler_16.ICompiledBlock;
+import com.idcom4.cpu.CPU_16.DataEndpoints;
+import com.idcom4.cpu.CPU_16.DecodedInstruction;
+import com.idcom4.cpu.InstructionHandlers_16.EKinds;
+import com.idcom4.cpu.components.IMemoryWriteListener;
+import com.idcom4.cpu.components.MemoryMapper_16;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Tiered execution: the interpreter runs everything first, counting how often each address is reached.
+    Once an address gets hot, the basic block starting there is compiled to JVM bytecode (see BlockCompiler_16),
+    and the next visits run the compiled block instead.
+
+    A basic block ends with:
+    - a jump (0x10 -> 0x14)
+    - a move into R_EXPTR, or into IRQ_MASK
+    - an interrupt, an inter-processor interrupt, or a wait
+    Unknown opcodes and device code are never compiled, the block stops right before them and the interpreter takes over.
+
+    Writes to compiled code (self-modifying programs) drop the blocks holding it,
+    and make the running block return to the interpreter right after the write.
+    So does a stack fault, for its interrupt to be taken right after the instruction raising it.
+
+    A concurrent engine (see CPU_16.CreateCores) is also invalidated by the other cores, while its core compiles:
+    like InstructionCache_16, every write counts, and a block is only kept if no write happened since its decoding started.
+    - the core publishes the block, marks its addresses as compiled, then reads the count, and drops the block if it changed
+    - a writer writes the memory, increments the count, then drops the compiled blocks it finds
+    The blocks are decoded from the memory, not from the instruction cache, whose entries could predate the count read.
+    Single core engines don't count the writes, nor pay for the fences.
+ */
+class JitEngine_16 implements IMemoryWriteListener {
+
+    record CompiledBlock(int start, int size, ICompiledBlock code) {}
+
+    private static final int SIZE = 0x10000;
+    private static final int INSTRUCTION_SIZE = 3;
+    // the execution pointer is a signed 16 bits value, nothing is executable past that
+    private static final int EXECUTABLE_LIMIT = Short.MAX_VALUE + 1;
+
+    private static final int HOT_THRESHOLD = 500;
+    static final int MAX_BLOCK_INSTRUCTIONS = 64;
+    private static final int MAX_BLOCK_SIZE = MAX_BLOCK_INSTRUCTIONS * INSTRUCTION_SIZE;
+    // each invalidation leads to a recompilation, past this many an address is left to the interpreter for good
+    private static final int MAX_COMPILATIONS = 8;
+    private static final int NO_BLOCK = -1;
+
+    private static final VarHandle BLOCKS = MethodHandles.arrayElementVarHandle(CompiledBlock[].class);
+    private static final VarHandle COMPILED_CODE = MethodHandles.arrayElementVarHandle(boolean[].class);
+    private static final VarHandle WRITES;
+    private static final VarHandle CODE_MODIFIED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            WRITES = lookup.findVarHandle(JitEngine_16.class, "writes", int.class);
+            CODE_MODIFIED = lookup.findVarHandle(JitEngine_16.class, "codeModified", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Context context;
+    private final MemoryMapper_16 memoryMapper;
+    private final BlockCompiler_16 compiler = new BlockCompiler_16();
+    private final boolean concurrent;
+    // the writes seen, concurrent engines only
+    private volatile int writes = 0;
+
+    private final CompiledBlock[] blocks = new CompiledBlock[SIZE];
+    private final int[] hotness = new int[SIZE];
+    private final byte[] compilations = new byte[SIZE];
+    // addresses holding compiled instructions
+    private final boolean[] compiledCode = new boolean[SIZE];
+
+    private boolean codeModified = false;
+    // the address of the running block, NO_BLOCK between blocks
+    private int blockStart = NO_BLOCK;
+
+    JitEngine_16(Context context, MemoryMapper_16 memoryMapper, boolean concurrent) {
+        this.context = context;
+        this.memoryMapper = memoryMapper;
+        this.concurrent = concurrent;
+    }
+
+    /*
+        Runs the compiled block at the execution pointer, compiling it first if it just got hot.
+        Returns the amount of instructions executed, 0 meaning the interpreter has to run the next instruction.
+     */
+    int Execute(CPU_16 cpu) {
+        int start = cpu.GetExecutionPointer() & 0xFFFF;
+
+        // cleared before the lookup: a remote write dropping the block after it is still seen by the running block
+        this.SetCodeModified(false);
+
+        CompiledBlock block = this.GetBlock(start);
+        if (block == null) {
+            if (this.compilations[start] >= MAX_COMPILATIONS || ++this.hotness[start] < HOT_THRESHOLD) return 0;
+
+            this.hotness[start] = 0;
+            block = this.Compile(cpu, start);
+            if (block == null) return 0;
+        }
+
+        this.blockStart = start;
+        int executed = block.code().Execute(cpu, this);
+        this.blockStart = NO_BLOCK;
+
+        return executed;
+    }
+
+    // the instructions of the running block executed before the current one, 0 between blocks (see CPU_16.GetCycles)
+    int GetBlockProgress(short executionPointer) {
+        if (this.blockStart == NO_BLOCK) return 0;
+
+        // compiled blocks move the execution pointer before each instruction, and never jump but at their end
+        return ((executionPointer & 0xFFFF) - this.blockStart) / INSTRUCTION_SIZE - 1;
+    }
+
+    // called by compiled blocks after each memory write
+    boolean IsCodeModified() {
+        return this.concurrent ? (boolean) CODE_MODIFIED.getVolatile(this) : this.codeModified;
+    }
+
+    private void SetCodeModified(boolean codeModified) {
+        if (this.concurrent) CODE_MODIFIED.setVolatile(this, codeModified);
+        else this.codeModified = codeModified;
+    }
+
+    private CompiledBlock GetBlock(int start) {
+        return this.concurrent ? (CompiledBlock) BLOCKS.getVolatile(this.blocks, start) : this.blocks[start];
+    }
+
+    private void SetBlock(int start, CompiledBlock block) {
+        if (this.concurrent) BLOCKS.setVolatile(this.blocks, start, block);
+        else this.blocks[start] = block;
+    }
+
+    private boolean IsCompiledCode(int address) {
+        return this.concurrent ? (boolean) COMPILED_CODE.getVolatile(this.compiledCode, address) : this.compiledCode[address];
+    }
+
+    @Override
+    public void OnWrite(int address) {
+        if (address < 0 || address >= SIZE) return;
+        if (this.concurrent) WRITES.getAndAdd(this, 1);
+
+        this.DropBlocks(address);
+    }
+
+    @Override
+    public void OnWriteRange(int address, int length) {
+        if (this.concurrent) WRITES.getAndAdd(this, 1);
+
+        int end = (int) Math.min(SIZE, (long) address + length);
+        for (int current = Math.max(0, address); current < end; current++) {
+            this.DropBlocks(current);
+        }
+    }
+
+    // drops every block holding the address
+    private void DropBlocks(int address) {
+        if (!this.IsCompiledCode(address)) return;
+
+        this.SetCodeModified(true);
+
+        for (int start = Math.max(0, address - MAX_BLOCK_SIZE + 1); start <= address; start++) {
+            CompiledBlock block = this.GetBlock(start);
+            if (block != null && address < start + block.size()) {
+                this.SetBlock(start, null);
+            }
+        }
+    }
+
+    private CompiledBlock Compile(CPU_16 cpu, int start) {
+        this.compilations[start]++;
+        int writes = this.concurrent ? this.writes : 0;
+
+        List<DecodedInstruction> instructions = new ArrayList<>();
+        int limit = Math.min(EXECUTABLE_LIMIT, this.memoryMapper.GetSize());
+        int address = start;
+
+        while (instructions.size() < MAX_BLOCK_INSTRUCTIONS && address + INSTRUCTION_SIZE <= limit) {
+            // device code is decoded on every fetch, see CPU_16.Fetch
+            if (cpu.IsDeviceCode((short) address, 1)) break;
+
+            DecodedInstruction instruction = cpu.Decode((short) address);
+            EKinds kind = InstructionHandlers_16.GetKind(instruction.rawOpcode() & 0xFFFF);
+
+            if (kind == EKinds.UNKNOWN) break;
+
+            instructions.add(instruction);
+            address += INSTRUCTION_SIZE;
+
+            if (EndsBlock(kind, instruction)) break;
+        }
+
+        if (instructions.isEmpty()) return null;
+
+        ICompiledBlock code;
+        try {
+            code = this.compiler.Compile(start, instructions);
+        } catch (ReflectiveOperationException e) {
+            this.context.logger.errln("JIT compilation failed at " + start + ": " + e.getMessage());
+            this.compilations[start] = MAX_COMPILATIONS;
+            return null;
+        }
+
+        CompiledBlock block = new CompiledBlock(start, address - start, code);
+        this.SetBlock(start, block);
+
+        if (!this.concurrent) {
+            for (int i = start; i < address; i++) this.compiledCode[i] = true;
+            return block;
+        }
+
+        // a writer not seeing the addresses as compiled yet incremented the count before, see the class comment
+        for (int i = start; i < address; i++) COMPILED_CODE.setVolatile(this.compiledCode, i, true);
+        if (this.writes == writes) return block;
+
+        this.SetBlock(start, null);
+        return null;
+    }
+
+    private static boolean EndsBlock(EKinds kind, DecodedInstruction instruction) {
+        return switch (kind) {
+            // an inter-processor interrupt may target the running core, which takes it before its next instruction
+            case JUMP, INTERRUPT, INTER_PROCESSOR_INTERRUPT, WAIT -> true;
+            // unmasking lets a pending interrupt line in before the next instruction
+            case MOVE -> InstructionHandlers_16.GetDestinationMode(instruction.rawOpcode() & 0xFFFF) == InstructionHandlers_16.STATIC
+                    && (instruction.param1() == DataEndpoints.R_EXPTR.address || instruction.param1() == DataEndpoints.IRQ_MASK.address);
+            default -> false;
+        };
+    }
+
+    static boolean AccessesStack(DecodedInstruction instruction) {
+        return InstructionHandlers_16.AccessesStack(instruction.rawOpcode() & 0xFFFF, instruction.param0(), instruction.param1());
+    }
+
+    static boolean WritesMemory(DecodedInstruction instruction) {
+        EKinds kind = InstructionHandlers_16.GetKind(instruction.rawOpcode() & 0xFFFF);
+
+        return switch (kind) {
+            case MOVE, COMPARE_AND_SWAP -> InstructionHandlers_16.GetDestinationMode(instruction.rawOpcode() & 0xFFFF) != InstructionHandlers_16.STATIC;
+            case MEMORY_COPY, MEMORY_SET -> true;
+            default -> false;
+        };
+    }
+}
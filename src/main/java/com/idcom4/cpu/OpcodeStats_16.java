@@ -0,0 +1,78 @@
+package com.idcom4.cpu;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Counts how often each instruction follows another, to pick the sequences worth fusing (see SuperInstructions_16).
+
+    Instructions are grouped by handler (kind and addressing modes, like "MoveImmediateStatic"),
+    so the counters are a fixed matrix and recording never allocates.
+ */
+public class OpcodeStats_16 {
+
+    private static final int[] HANDLER_OF_WORD = new int[0x10000];
+    private static final String[] HANDLER_NAMES;
+
+    static {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+
+        for (int word = 0; word < HANDLER_OF_WORD.length; word++) {
+            String name = InstructionHandlers_16.GetHandlerName(word);
+            HANDLER_OF_WORD[word] = ids.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size() - 1;
+            });
+        }
+
+        HANDLER_NAMES = names.toArray(new String[0]);
+    }
+
+    private static final int HANDLER_COUNT = HANDLER_NAMES.length;
+
+    private final long[] pairs = new long[HANDLER_COUNT * HANDLER_COUNT];
+    private final long[] singles = new long[HANDLER_COUNT];
+    private int previous = -1;
+
+    void Record(short rawOpcode) {
+        int handler = HANDLER_OF_WORD[rawOpcode & 0xFFFF];
+
+        this.singles[handler]++;
+        if (this.previous >= 0) this.pairs[this.previous * HANDLER_COUNT + handler]++;
+
+        this.previous = handler;
+    }
+
+    public void Print(PrintStream out, int top) {
+        long instructions = 0;
+        for (long count : this.singles) instructions += count;
+
+        out.printf("Opcode statistics: %d instructions%n", instructions);
+        if (instructions == 0) return;
+
+        out.println("Instructions:");
+        for (int index : TopIndexes(this.singles, top)) {
+            out.printf("  %-24s %12d  %5.1f%%%n", HANDLER_NAMES[index], this.singles[index], 100.0 * this.singles[index] / instructions);
+        }
+
+        out.println("Pairs:");
+        for (int index : TopIndexes(this.pairs, top)) {
+            String pair = HANDLER_NAMES[index / HANDLER_COUNT] + " -> " + HANDLER_NAMES[index % HANDLER_COUNT];
+            out.printf("  %-48s %12d  %5.1f%%%n", pair, this.pairs[index], 100.0 * this.pairs[index] / Math.max(1, instructions - 1));
+        }
+    }
+
+    private static List<Integer> TopIndexes(long[] counts, int top) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) indexes.add(i);
+        }
+
+        indexes.sort((a, b) -> Long.compare(counts[b], counts[a]));
+        return indexes.subList(0, Math.min(top, indexes.size()));
+    }
+}
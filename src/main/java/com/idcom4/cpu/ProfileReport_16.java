@@ -0,0 +1,58 @@
+package com.idcom4.cpu;
+
+import com.idcom4.cpu.CPU_16.DataEndpoints;
+import com.idcom4.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// writes the profilers' reports, see IProfiler_16
+final class ProfileReport_16 {
+
+    static final int SIZE = 0x10000;
+    static final int INSTRUCTION_SIZE = 3;
+    // called through a computed address
+    static final int NO_FUNCTION = -1;
+    // the code running from the start, before any call
+    static final int ENTRY_FUNCTION = DataEndpoints.MEM_START.address;
+
+    private ProfileReport_16() {}
+
+    static String FunctionFrame(int function) {
+        return function == NO_FUNCTION ? "fn_?" : String.format("fn_%04x", function);
+    }
+
+    static String AddressFrame(int address) {
+        return String.format("0x%04x", address);
+    }
+
+    static void WriteCollapsed(String fileName, Map<String, Long> stacks) {
+        StringBuilder content = new StringBuilder();
+        stacks.forEach((stack, count) -> content.append(stack).append(' ').append(count).append('\n'));
+
+        FileUtils.WriteFile(fileName, content.toString());
+    }
+
+    // counts: per address, functions: the function each address belongs to
+    static void WriteHotspots(String fileName, long[] counts, int[] functions) {
+        long total = 0;
+        List<Integer> addresses = new ArrayList<>();
+        for (int address = 0; address < counts.length; address++) {
+            if (counts[address] == 0) continue;
+
+            total += counts[address];
+            addresses.add(address);
+        }
+
+        addresses.sort((a, b) -> Long.compare(counts[b], counts[a]));
+
+        StringBuilder content = new StringBuilder("address,function,count,percent\n");
+        for (int address : addresses) {
+            content.append(String.format(Locale.ROOT, "0x%04x,%s,%d,%.2f\n", address, FunctionFrame(functions[address]), counts[address], 100.0 * counts[address] / total));
+        }
+
+        FileUtils.WriteFile(fileName, content.toString());
+    }
+}
@@ -0,0 +1,97 @@
+package com.idcom4.cpu;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.idcom4.cpu.ProfileReport_16.*;
+
+/*
+    Samples the CPU from its own thread: at a fixed interval, it reads the execution pointer
+    and walks the stack for return addresses (see CPU_16.GetCallTarget) to rebuild the call stack.
+
+    The CPU thread does nothing for it, so it can stay on with any execution engine.
+    The samples are racy by nature: a sample taken in the middle of a call can miss or repeat a frame.
+ */
+public class SamplingProfiler_16 implements IProfiler_16 {
+
+    private static final long INTERVAL_NANOS = 1_000_000;
+    // only the top of a deep stack is walked
+    private static final int MAX_STACK_SCAN = 4096;
+
+    private final CPU_16 cpu;
+
+    private final long[] addressCounts = new long[SIZE];
+    private final int[] functions = new int[SIZE];
+    private final Map<String, Long> stacks = new HashMap<>();
+    private final StringBuilder stack = new StringBuilder();
+
+    private Thread samplingThread;
+    private volatile boolean running = false;
+
+    SamplingProfiler_16(CPU_16 cpu) {
+        this.cpu = cpu;
+        Arrays.fill(this.functions, NO_FUNCTION);
+    }
+
+    @Override
+    public void Start() {
+        if (this.running) return;
+
+        this.running = true;
+        this.samplingThread = new Thread(() -> {
+            while (this.running) {
+                this.Sample();
+                LockSupport.parkNanos(this, INTERVAL_NANOS);
+            }
+        }, "profiler-sampler");
+        this.samplingThread.setDaemon(true);
+        this.samplingThread.start();
+    }
+
+    @Override
+    public void Stop() {
+        if (!this.running) return;
+
+        this.running = false;
+        LockSupport.unpark(this.samplingThread);
+
+        try {
+            this.samplingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void Sample() {
+        int ptr = this.cpu.GetExecutionPointer() & 0xFFFF;
+        int function = ENTRY_FUNCTION;
+
+        this.stack.setLength(0);
+        this.stack.append(FunctionFrame(function));
+
+        // outermost call first
+        int depth = this.cpu.GetStackDepth();
+        for (int i = Math.max(0, depth - MAX_STACK_SCAN); i < depth; i++) {
+            int callee = this.cpu.GetCallTarget(this.cpu.GetStackValue(i));
+            if (callee == CPU_16.NOT_A_CALL) continue;
+
+            function = callee;
+            this.stack.append(';').append(FunctionFrame(function));
+        }
+
+        this.stack.append(';').append(AddressFrame(ptr));
+
+        this.stacks.merge(this.stack.toString(), 1L, Long::sum);
+        this.addressCounts[ptr]++;
+        this.functions[ptr] = function;
+    }
+
+    // stop first, the samples aren't synchronized
+    @Override
+    public void Export(String filePrefix) {
+        WriteCollapsed(filePrefix + ".collapsed", this.stacks);
+        WriteHotspots(filePrefix + ".csv", this.addressCounts, this.functions);
+    }
+}
@@ -0,0 +1,144 @@
+package com.idcom4.cpu;
+
+import com.idcom4.cpu.CPU_16.DataEndpoints;
+import com.idcom4.cpu.CPU_16.DecodedInstruction;
+import com.idcom4.cpu.InstructionHandlers_16.EKinds;
+
+/*
+    Superinstructions: common instruction sequences the interpreter runs as a single one,
+    with one fetch and one dispatch instead of one per instruction.
+
+    - BRANCH:               MOVE <target> -> R3, JMP_xx
+    - ACCUMULATE:           <math>, MOVE ACCU0 -> <static address>
+    - ACCUMULATE_BRANCH:    <math>, MOVE ACCU0 -> <static address>, MOVE <target> -> R3, JMP_xx
+
+    Every instruction but the last one writes static addresses only, never R_EXPTR nor IRQ_MASK, nor touches the stack,
+    so none of them can change which instructions come next, overwrite them, raise a stack fault, or let an interrupt in.
+    Each instruction still moves the execution pointer before running, exactly like the interpreter.
+    None of them reads the cycle counter, only counting fused instructions once done (see CPU_16.GetCycles).
+
+    Run with --opcode-stats to find the next sequences worth fusing.
+ */
+final class SuperInstructions_16 {
+
+    enum EFusions {
+        // longest first, the first one matching wins
+        ACCUMULATE_BRANCH(4),
+        BRANCH(2),
+        ACCUMULATE(2);
+
+        final int length;
+
+        EFusions(int length) {
+            this.length = length;
+        }
+    }
+
+    interface IFusedHandler {
+        void handle(CPU_16 cpu, short ptr);
+    }
+
+    record FusedInstruction(EFusions fusion, IFusedHandler handler) {}
+
+    // cached for addresses where no sequence matches, so they aren't looked at again
+    static final FusedInstruction NONE = new FusedInstruction(null, null);
+
+    static final int MAX_LENGTH = 4;
+
+    private static final int INSTRUCTION_SIZE = 3;
+    private static final short R3 = DataEndpoints.R3.address;
+    private static final short R_ACCU0 = DataEndpoints.R_ACCU0.address;
+    private static final short R_EXPTR = DataEndpoints.R_EXPTR.address;
+    private static final short IRQ_MASK = DataEndpoints.IRQ_MASK.address;
+
+    private static final EFusions[] FUSIONS = EFusions.values();
+
+    private SuperInstructions_16() {}
+
+    // limit: first address past the executable code
+    static FusedInstruction Fuse(CPU_16 cpu, short ptr, int limit) {
+        int available = ptr < 0 ? 0 : Math.min(MAX_LENGTH, (limit - ptr) / INSTRUCTION_SIZE);
+        // device code is decoded on every fetch, see CPU_16.Fetch
+        if (available < 2 || cpu.IsDeviceCode(ptr, available)) return NONE;
+
+        DecodedInstruction[] window = new DecodedInstruction[available];
+        for (int i = 0; i < available; i++) {
+            window[i] = cpu.Fetch((short) (ptr + i * INSTRUCTION_SIZE));
+        }
+
+        for (EFusions fusion : FUSIONS) {
+            if (fusion.length <= available && Matches(fusion, window)) return new FusedInstruction(fusion, Compose(fusion, window));
+        }
+
+        return NONE;
+    }
+
+    private static boolean Matches(EFusions fusion, DecodedInstruction[] window) {
+        for (int i = 0; i < fusion.length; i++) {
+            if (ReadsCycles(window[i])) return false;
+            if (i < fusion.length - 1 && JitEngine_16.AccessesStack(window[i])) return false;
+        }
+
+        return switch (fusion) {
+            case BRANCH ->              IsMoveToR3(window[0]) && IsJump(window[1]);
+            case ACCUMULATE ->          IsMath(window[0]) && IsAccumulatorMove(window[1]);
+            case ACCUMULATE_BRANCH ->   IsMath(window[0]) && IsAccumulatorMove(window[1]) && IsMoveToR3(window[2]) && IsJump(window[3]);
+        };
+    }
+
+    private static IFusedHandler Compose(EFusions fusion, DecodedInstruction[] window) {
+        DecodedInstruction first = window[0];
+        DecodedInstruction second = window[1];
+
+        if (fusion.length == 2) {
+            return (cpu, ptr) -> {
+                Step(cpu, ptr, 1, first);
+                Step(cpu, ptr, 2, second);
+            };
+        }
+
+        DecodedInstruction third = window[2];
+        DecodedInstruction fourth = window[3];
+
+        return (cpu, ptr) -> {
+            Step(cpu, ptr, 1, first);
+            Step(cpu, ptr, 2, second);
+            Step(cpu, ptr, 3, third);
+            Step(cpu, ptr, 4, fourth);
+        };
+    }
+
+    private static void Step(CPU_16 cpu, short ptr, int index, DecodedInstruction instruction) {
+        cpu.SetExecutionPointer((short) (ptr + index * INSTRUCTION_SIZE));
+        instruction.handler().handle(cpu, instruction.opcode(), instruction.param0(), instruction.param1());
+    }
+
+    private static boolean ReadsCycles(DecodedInstruction instruction) {
+        return InstructionHandlers_16.ReadsCycles(instruction.rawOpcode() & 0xFFFF, instruction.param0(), instruction.param1());
+    }
+
+    private static boolean IsMath(DecodedInstruction instruction) {
+        return InstructionHandlers_16.GetKind(instruction.rawOpcode() & 0xFFFF) == EKinds.MATH;
+    }
+
+    private static boolean IsJump(DecodedInstruction instruction) {
+        return InstructionHandlers_16.GetKind(instruction.rawOpcode() & 0xFFFF) == EKinds.JUMP;
+    }
+
+    private static boolean IsMoveToR3(DecodedInstruction instruction) {
+        return IsStaticMove(instruction) && instruction.param1() == R3;
+    }
+
+    private static boolean IsAccumulatorMove(DecodedInstruction instruction) {
+        return IsStaticMove(instruction)
+                && InstructionHandlers_16.GetParam0Mode(instruction.rawOpcode() & 0xFFFF) == InstructionHandlers_16.STATIC
+                && instruction.param0() == R_ACCU0
+                && instruction.param1() != R_EXPTR
+                && instruction.param1() != IRQ_MASK;
+    }
+
+    private static boolean IsStaticMove(DecodedInstruction instruction) {
+        int word = instruction.rawOpcode() & 0xFFFF;
+        return InstructionHandlers_16.GetKind(word) == EKinds.MOVE && InstructionHandlers_16.GetDestinationMode(word) == InstructionHandlers_16.STATIC;
+    }
+}
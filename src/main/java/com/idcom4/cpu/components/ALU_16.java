@@ -4,8 +4,19 @@ import com.idcom4.Context;
 import com.idcom4.utils.logger.ILogger;
 
 public class ALU_16 {
-    
-    public record Out(short primaryResult, short secondaryResult, short flags, boolean cmpRequested, boolean cmpTrue) {}
+
+    /*
+        RESULT (packed in a long):
+
+        | - (14) | c | d | - (16) | OUTPUT_1 (16) | OUTPUT_0 (16) |
+
+        c. comparison requested
+        d. comparison true
+
+        The flags aren't part of it, the CPU computes them from the same inputs and outputs only when they are read.
+     */
+    private static final long CMP_TRUE = 1L << 48;
+    private static final long CMP_REQUESTED = 1L << 49;
 
     /*
         OPCODE:
@@ -33,17 +44,18 @@ public class ALU_16 {
 
         public final short code;
 
+        private static final Operations[] BY_CODE = new Operations[0x10];
+        static {
+            for (Operations op : Operations.values()) BY_CODE[op.code] = op;
+        }
+
         private Operations(int code) {
             this.code = (short)code;
         }
 
+        // null if unknown
         public static Operations fromBytes(short code) {
-            for (Operations op : Operations.values()) {
-                if (op.code == code) return op;
-            }
-
-            Context.INSTANCE.logger.errln("Unknown operation: " + code);
-            return Operations.NOOP;
+            return (code & 0xFFFF) < BY_CODE.length ? BY_CODE[code] : null;
         }
     }
 
@@ -56,28 +68,38 @@ public class ALU_16 {
 
         public final short code;
 
+        private static final Comparisons[] BY_CODE = new Comparisons[0x10];
+        static {
+            for (Comparisons op : Comparisons.values()) BY_CODE[op.code] = op;
+        }
+
         private Comparisons(int code) {
             this.code = (short)code;
         }
 
+        // null if unknown
         public static Comparisons fromBytes(short code) {
-            for (Comparisons op : Comparisons.values()) {
-                if (op.code == code) return op;
-            }
-
-            Context.INSTANCE.logger.errln("Unknown comparison: " + code);
-            return Comparisons.EQUAL;
+            return (code & 0xFFFF) < BY_CODE.length ? BY_CODE[code] : null;
         }
     }
 
+    private final Context context;
+
+    public ALU_16(Context context) {
+        this.context = context;
+    }
 
-    public Out compute(short opcode, short input0, short input1) {
+    // returns the packed result, see the accessors below to read it
+    public long Compute(short opcode, short input0, short input1) {
 
         boolean cmpRequested = (opcode & 0b00010000) != 0;
 
         if (cmpRequested) {
             Comparisons comparison = Comparisons.fromBytes((short) (opcode & 0b00001111));
-            short flags = SetFlags(input0, input1, input0, input1);
+            if (comparison == null) {
+                this.context.logger.errln("Unknown comparison: " + (opcode & 0b00001111));
+                comparison = Comparisons.EQUAL;
+            }
 
             boolean cmpTrue = switch (comparison) {
                 case EQUAL -> input0 == input1;
@@ -87,31 +109,46 @@ public class ALU_16 {
                 case GREATER_OR_EQUAL -> input0 >= input1;
             };
 
-            return new Out((short) 0, (short) 0, flags, true, cmpTrue);
+            return CMP_REQUESTED | (cmpTrue ? CMP_TRUE : 0);
         }
         else {
 
             Operations operation = Operations.fromBytes((short) (opcode & 0b00001111));
+            if (operation == null) {
+                this.context.logger.errln("Unknown operation: " + (opcode & 0b00001111));
+                operation = Operations.NOOP;
+            }
 
             return switch (operation) {
-                case Operations.NOOP ->         CreateOperationOut(input0, input1, input0, input1);
-                case Operations.ADD ->          CreateOperationOut(input0, input1, (short) (input0 + input1), (short) 0);
-                case Operations.SUBSTRACT ->    CreateOperationOut(input0, input1, (short) (input0 - input1), (short) 0);
-                case Operations.MULTIPLY ->     CreateOperationOut(input0, input1, (short) (input0 * input1), (short) 0);
-                case Operations.DIVIDE ->       CreateOperationOut(input0, input1, (short) (input1 == 0 ? -1 : input0 / input1), (short) (input1 == 0 ? 0 : input0 % input1));
-                case Operations.MODULO ->       CreateOperationOut(input0, input1, (short) (input1 == 0 ? 0 : input0 % input1), (short) (input1 == 0 ? -1 : input0 / input1));
-                case Operations.AND ->          CreateOperationOut(input0, input1, (short) (input0 & input1), (short) 0);
-                case Operations.OR ->           CreateOperationOut(input0, input1, (short) (input0 | input1), (short) 0);
-                case Operations.XOR ->          CreateOperationOut(input0, input1, (short) (input0 ^ input1), (short) 0);
-                case Operations.LEFT_SHIFT ->   CreateOperationOut(input0, input1, (short) (input0 << input1), (short) 0);
-                case Operations.RIGHT_SHIFT ->  CreateOperationOut(input0, input1, (short) (input0 >> input1), (short) 0);
+                case Operations.NOOP ->         Pack(input0, input1);
+                case Operations.ADD ->          Pack((short) (input0 + input1), (short) 0);
+                case Operations.SUBSTRACT ->    Pack((short) (input0 - input1), (short) 0);
+                case Operations.MULTIPLY ->     Pack((short) (input0 * input1), (short) 0);
+                case Operations.DIVIDE ->       Pack((short) (input1 == 0 ? -1 : input0 / input1), (short) (input1 == 0 ? 0 : input0 % input1));
+                case Operations.MODULO ->       Pack((short) (input1 == 0 ? 0 : input0 % input1), (short) (input1 == 0 ? -1 : input0 / input1));
+                case Operations.AND ->          Pack((short) (input0 & input1), (short) 0);
+                case Operations.OR ->           Pack((short) (input0 | input1), (short) 0);
+                case Operations.XOR ->          Pack((short) (input0 ^ input1), (short) 0);
+                case Operations.LEFT_SHIFT ->   Pack((short) (input0 << input1), (short) 0);
+                case Operations.RIGHT_SHIFT ->  Pack((short) (input0 >> input1), (short) 0);
             };
         }
     }
 
-    private Out CreateOperationOut(short input0, short input1, short output0, short output2) {
-        short flags = SetFlags(input0, input1, output0, output2);
-        return new Out(output0, output2, flags, false, false);
+    public static short PrimaryResult(long result) {
+        return (short) result;
+    }
+
+    public static short SecondaryResult(long result) {
+        return (short) (result >>> 16);
+    }
+
+    public static boolean IsCmpTrue(long result) {
+        return (result & CMP_TRUE) != 0;
+    }
+
+    private static long Pack(short output0, short output1) {
+        return ((long) output1 & 0xFFFF) << 16 | ((long) output0 & 0xFFFF);
     }
 
     /*
@@ -128,28 +165,20 @@ public class ALU_16 {
         g. output1 < 0
         h. output1 > 0
 
+        Every flag but a is 0 when true, 1 when false.
+        They are looked up by the sign of each comparison: index 0 if negative, 1 if zero, 2 if positive.
      */
-    private short SetFlags(short input0, short input1, short output0, short output1) {
-        // input0 == input1
-        short flags = (short) (input0 == input1 ? 1 : 0);
-        // input0 < input1
-        flags = (short) (flags << 1 | ((input0 < input1) ? 0 : 1));
-
-        // output0 == 0
-        flags = (short) (flags << 1 | ((output0 == 0) ? 0 : 1));
-        // output0 < 0
-        flags = (short) (flags << 1 | ((output0 < 0) ? 0 : 1));
-        // output0 > 0
-        flags = (short) (flags << 1 | ((output0 > 0) ? 0 : 1));
-
-        // output1 == 0
-        flags = (short) (flags << 1 | ((output1 == 0) ? 0 : 1));
-        // output1 < 0
-        flags = (short) (flags << 1 | ((output1 < 0) ? 0 : 1));
-        // output1 > 0
-        flags = (short) (flags << 1 | ((output1 > 0) ? 0 : 1));
-
-        return flags;
+
+    // bits a b, by the sign of input0 - input1
+    private static final int[] INPUT_FLAGS = { 0b00, 0b11, 0b01 };
+    // bits c d e (or f g h), by the sign of the output
+    private static final int[] OUTPUT_FLAGS = { 0b101, 0b011, 0b110 };
+
+    // a comparison's outputs are its inputs
+    public static short ComputeFlags(short input0, short input1, short output0, short output1) {
+        return (short) (INPUT_FLAGS[Integer.signum(input0 - input1) + 1] << 6
+                | OUTPUT_FLAGS[Integer.signum(output0) + 1] << 3
+                | OUTPUT_FLAGS[Integer.signum(output1) + 1]);
     }
 
 }
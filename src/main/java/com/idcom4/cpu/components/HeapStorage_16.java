@@ -0,0 +1,146 @@
+package com.idcom4.cpu.components;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/*
+    The content is split in pages, shared copy-on-write between a storage, its snapshots and the storages created from them:
+    a shared page is only copied on its first write, so a snapshot or a fork costs a page table, not a copy of the memory.
+    Untouched pages of a new storage all share a single page of zeros.
+ */
+public class HeapStorage_16 implements IMemoryStorage_16 {
+
+    public static final int PAGE_BITS = 10;
+    public static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    static final short[] ZERO_PAGE = new short[PAGE_SIZE];
+
+    private static final VarHandle CONTENT = MethodHandles.arrayElementVarHandle(short[].class);
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(short[][].class);
+
+    private final int size;
+    private final short[][] pages;
+    // the pages shared with snapshots (or other storages), still in pages as long as they weren't written
+    private short[][] sharedPages;
+
+    public HeapStorage_16(int size) {
+        this.size = size;
+        this.pages = new short[PageCount(size)][];
+        Arrays.fill(this.pages, ZERO_PAGE);
+        this.sharedPages = this.pages.clone();
+    }
+
+    public HeapStorage_16(short[] content) {
+        this.size = content.length;
+        this.pages = new short[PageCount(size)][];
+        for (int i = 0; i < this.pages.length; i++) {
+            this.pages[i] = Arrays.copyOfRange(content, i << PAGE_BITS, (i + 1) << PAGE_BITS);
+        }
+        this.sharedPages = new short[this.pages.length][];
+    }
+
+    // the pages are shared with the snapshot they come from, see TakeSnapshot
+    public HeapStorage_16(int size, short[][] pages) {
+        this.size = size;
+        this.pages = pages.clone();
+        this.sharedPages = pages;
+    }
+
+    @Override
+    public int GetSize() {
+        return size;
+    }
+
+    @Override
+    public short GetValue(int address) {
+        short[] page = (short[]) PAGES.getAcquire(this.pages, address >>> PAGE_BITS);
+        return (short) CONTENT.getAcquire(page, address & PAGE_MASK);
+    }
+
+    @Override
+    public void SetValue(int address, short value) {
+        CONTENT.setRelease(this.GetWritablePage(address >>> PAGE_BITS), address & PAGE_MASK, value);
+    }
+
+    @Override
+    public short CompareAndExchange(int address, short expected, short value) {
+        return (short) CONTENT.compareAndExchange(this.GetWritablePage(address >>> PAGE_BITS), address & PAGE_MASK, expected, value);
+    }
+
+    // the pages of zeros aren't allocated, the ones shared with snapshots are counted anyway
+    @Override
+    public long GetResidentSize() {
+        long resident = 0;
+        for (int i = 0; i < this.pages.length; i++) {
+            if (PAGES.getAcquire(this.pages, i) != ZERO_PAGE) resident += Math.min(PAGE_SIZE, this.size - (i << PAGE_BITS));
+        }
+
+        return resident;
+    }
+
+    // shares every page with the snapshot, the storage copying them back on their next write
+    @Override
+    public short[][] TakeSnapshot() {
+        short[][] pages = this.pages.clone();
+        this.sharedPages = pages;
+
+        return pages;
+    }
+
+    @Override
+    public void CopyTo(int address, short[] content, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min(PAGE_SIZE - (current & PAGE_MASK), length - copied);
+            System.arraycopy((short[]) PAGES.getAcquire(this.pages, current >>> PAGE_BITS), current & PAGE_MASK, content, offset + copied, count);
+            copied += count;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void CopyFrom(int address, short[] content, int offset, int length) {
+        VarHandle.releaseFence();
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min(PAGE_SIZE - (current & PAGE_MASK), length - copied);
+            System.arraycopy(content, offset + copied, this.GetWritablePage(current >>> PAGE_BITS), current & PAGE_MASK, count);
+            copied += count;
+        }
+    }
+
+    @Override
+    public void Fill(int address, int length, short value) {
+        VarHandle.releaseFence();
+        int filled = 0;
+        while (filled < length) {
+            int current = address + filled;
+            int count = Math.min(PAGE_SIZE - (current & PAGE_MASK), length - filled);
+            Arrays.fill(this.GetWritablePage(current >>> PAGE_BITS), current & PAGE_MASK, (current & PAGE_MASK) + count, value);
+            filled += count;
+        }
+    }
+
+    private short[] GetWritablePage(int index) {
+        short[] page = (short[]) PAGES.getAcquire(this.pages, index);
+        if (page != this.sharedPages[index]) return page;
+
+        // another core may be copying it too
+        synchronized (this) {
+            page = this.pages[index];
+            if (page != this.sharedPages[index]) return page;
+
+            page = page.clone();
+            PAGES.setRelease(this.pages, index, page);
+            return page;
+        }
+    }
+
+    private static int PageCount(int size) {
+        return (int) ((size + (long) PAGE_MASK) >>> PAGE_BITS);
+    }
+}
@@ -0,0 +1,88 @@
+package com.idcom4.cpu.components;
+
+import java.util.Arrays;
+
+/*
+    Holds the content of a memory block, the block checking the addresses and the read-only flag before any access.
+    Reads are acquire loads, writes release stores, and CompareAndExchange is atomic (see MemoryBlock_16).
+ */
+public interface IMemoryStorage_16 {
+
+    enum EBackends {
+        HEAP("heap"),           // java arrays, shared copy-on-write with snapshots
+        OFF_HEAP("offheap"),    // native memory, outside of the garbage collected heap
+        MAPPED("mapped"),       // the state file itself, mapped in memory
+        SPARSE("sparse");       // java arrays, allocated on the first write to each page
+
+        public final String name;
+
+        EBackends(String name) {
+            this.name = name;
+        }
+
+        // null if unknown
+        public static EBackends fromName(String name) {
+            for (EBackends backend : EBackends.values()) {
+                if (backend.name.equals(name)) return backend;
+            }
+
+            return null;
+        }
+    }
+
+    int GetSize();
+
+    short GetValue(int address);
+
+    void SetValue(int address, short value);
+
+    // the amount of values actually held in memory
+    default long GetResidentSize() {
+        return this.GetSize();
+    }
+
+    // writes the value if the current one is the expected one, returns the value found (the expected one on success)
+    short CompareAndExchange(int address, short expected, short value);
+
+    // the content as pages of HeapStorage_16.PAGE_SIZE values, never written again
+    default short[][] TakeSnapshot() {
+        short[][] pages = new short[(this.GetSize() + HeapStorage_16.PAGE_SIZE - 1) / HeapStorage_16.PAGE_SIZE][HeapStorage_16.PAGE_SIZE];
+        for (int address = 0; address < this.GetSize(); address++) {
+            pages[address / HeapStorage_16.PAGE_SIZE][address % HeapStorage_16.PAGE_SIZE] = this.GetValue(address);
+        }
+
+        return pages;
+    }
+
+    /*
+        Bulk accesses, for the memory instructions (see MemoryMapper_16.Copy) and the checkpoints.
+        The range is already checked. Bulk writes are ordered after the writes before them (release),
+        but not between each other.
+     */
+
+    // copies length values from the address to content, starting at offset
+    default void CopyTo(int address, short[] content, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            content[offset + i] = this.GetValue(address + i);
+        }
+    }
+
+    // writes length values of content, starting at offset, from the address
+    default void CopyFrom(int address, short[] content, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            this.SetValue(address + i, content[offset + i]);
+        }
+    }
+
+    default void Fill(int address, int length, short value) {
+        short[] values = new short[Math.min(length, HeapStorage_16.PAGE_SIZE)];
+        Arrays.fill(values, value);
+
+        for (int filled = 0; filled < length; filled += values.length) {
+            this.CopyFrom(address + filled, values, 0, Math.min(values.length, length - filled));
+        }
+    }
+
+    // writes the content back to where it persists, if anywhere
+    default void Force() {}
+}
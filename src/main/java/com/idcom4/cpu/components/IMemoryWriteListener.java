@@ -0,0 +1,12 @@
+package com.idcom4.cpu.components;
+
+public interface IMemoryWriteListener {
+    void OnWrite(int address);
+
+    // a bulk write of length values from the address
+    default void OnWriteRange(int address, int length) {
+        for (int i = 0; i < length; i++) {
+            this.OnWrite(address + i);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.idcom4.cpu.components;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.LongSupplier;
+
+/*
+    The interrupt lines of a core: LINE_COUNT lines, raised from any thread (devices, the host), and taken by the core
+    before its next instruction while not masked (see CPU_16.TakeInterruptLine). The lower the line, the higher its priority.
+    Raising a line already pending does nothing more, the core takes it once.
+
+    It also runs the cycle timers, raising a line every period of cycles of the core. They are checked against
+    the cycles of the core, not the time, so a timer fires at the same instruction whatever the execution engine.
+ */
+public class InterruptController_16 {
+
+    public static final int LINE_COUNT = 16;
+
+    // the line the hosts raise when input arrives (see BIOS, FleetVm.Input)
+    public static final int INPUT_LINE = 1;
+
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // compiled blocks run up to 64 instructions at once: a shorter period couldn't fire at the exact cycle
+    public static final long MIN_CYCLE_PERIOD = 64;
+
+    private static final VarHandle PENDING;
+
+    static {
+        try {
+            PENDING = MethodHandles.lookup().findVarHandle(InterruptController_16.class, "pending", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // bit n set: line n raised and not taken yet, checked by the core before each instruction
+    private volatile int pending = 0;
+
+    // only written by the core: bit n set masks line n. Everything is masked at reset
+    private short mask = (short) 0xFFFF;
+    // the complement of the mask, for HasPending
+    private int unmasked = 0;
+    // the address of the table of handlers, one per line, 0 for none (see CPU_16.TakeInterruptLine)
+    private short vectors = 0;
+
+    // the cycles of the core, for the cycle timers
+    private final LongSupplier clock;
+    private final long[] periods = new long[LINE_COUNT];
+    private final long[] nextFirings = new long[LINE_COUNT];
+    // the earliest next firing, checked by the core before each instruction
+    private volatile long deadline = NO_DEADLINE;
+
+    // null if there is nothing to wake
+    private volatile Runnable wakeListener;
+
+    public InterruptController_16(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    // thread-safe
+    public void Raise(int line) {
+        if (line < 0 || line >= LINE_COUNT) return;
+
+        PENDING.getAndBitwiseOr(this, 1 << line);
+        this.Wake();
+    }
+
+    // lets the thread running the core know something is to be taken, if it's waiting (see CPU_16.EStopReasons.WAIT)
+    public void Wake() {
+        Runnable wakeListener = this.wakeListener;
+        if (wakeListener != null) wakeListener.run();
+    }
+
+    public void SetWakeListener(Runnable wakeListener) {
+        this.wakeListener = wakeListener;
+    }
+
+    // whether a line not masked is pending, from the core only
+    public boolean HasPending() {
+        return (this.pending & this.unmasked) != 0;
+    }
+
+    // clears and returns the pending line not masked with the highest priority, -1 if none, from the core only
+    public int Take() {
+        while (true) {
+            int pending = this.pending;
+            int unmasked = pending & this.unmasked;
+            if (unmasked == 0) return -1;
+
+            int line = Integer.numberOfTrailingZeros(unmasked);
+            if (PENDING.compareAndSet(this, pending, pending & ~(1 << line))) return line;
+        }
+    }
+
+    // acknowledges the lines without taking them
+    public void Clear(short lines) {
+        PENDING.getAndBitwiseAnd(this, ~lines & 0xFFFF);
+    }
+
+    public short GetPending() {
+        return (short) this.pending;
+    }
+
+    public short GetMask() {
+        return this.mask;
+    }
+
+    public void SetMask(short mask) {
+        this.mask = mask;
+        this.unmasked = ~mask & 0xFFFF;
+    }
+
+    public short GetVectors() {
+        return this.vectors;
+    }
+
+    public void SetVectors(short vectors) {
+        this.vectors = vectors;
+    }
+
+    // for the snapshots, from the core only
+    public void Restore(short mask, short vectors, short pending) {
+        this.SetMask(mask);
+        this.vectors = vectors;
+        this.pending = pending & 0xFFFF;
+    }
+
+    /*
+        Raises the line every period of cycles from now on, 0 to stop (periods shorter than MIN_CYCLE_PERIOD are raised to it).
+        Exact from the thread running the core (a device it writes), from any other thread "now" is only close to it.
+     */
+    public synchronized void SetCycleTimer(int line, long period) {
+        if (line < 0 || line >= LINE_COUNT) return;
+
+        this.periods[line] = period <= 0 ? 0 : Math.max(MIN_CYCLE_PERIOD, period);
+        this.nextFirings[line] = this.clock.getAsLong() + this.periods[line];
+        this.UpdateDeadline();
+    }
+
+    public long GetDeadline() {
+        return this.deadline;
+    }
+
+    // raises the lines of the timers due at the given cycle, from the core only. Missed periods are dropped
+    public synchronized void Tick(long cycles) {
+        for (int line = 0; line < LINE_COUNT; line++) {
+            long period = this.periods[line];
+            if (period == 0 || cycles < this.nextFirings[line]) continue;
+
+            PENDING.getAndBitwiseOr(this, 1 << line);
+            this.nextFirings[line] += period * ((cycles - this.nextFirings[line]) / period + 1);
+        }
+
+        this.UpdateDeadline();
+    }
+
+    private void UpdateDeadline() {
+        long deadline = NO_DEADLINE;
+        for (int line = 0; line < LINE_COUNT; line++) {
+            if (this.periods[line] != 0) deadline = Math.min(deadline, this.nextFirings[line]);
+        }
+
+        this.deadline = deadline;
+    }
+}
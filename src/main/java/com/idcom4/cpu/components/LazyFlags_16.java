@@ -0,0 +1,36 @@
+package com.idcom4.cpu.components;
+
+/*
+    Inputs and outputs of the last ALU operation, kept instead of its flags.
+    The flags are computed from them only if the flags register gets read before being overwritten.
+ */
+public class LazyFlags_16 {
+
+    private boolean pending = false;
+    private short input0;
+    private short input1;
+    private short output0;
+    private short output1;
+
+    public void Record(short input0, short input1, short output0, short output1) {
+        this.pending = true;
+        this.input0 = input0;
+        this.input1 = input1;
+        this.output0 = output0;
+        this.output1 = output1;
+    }
+
+    // the flags got overwritten, the recorded operation doesn't matter anymore
+    public void Discard() {
+        this.pending = false;
+    }
+
+    public boolean IsPending() {
+        return this.pending;
+    }
+
+    public short Materialize() {
+        this.pending = false;
+        return ALU_16.ComputeFlags(this.input0, this.input1, this.output0, this.output1);
+    }
+}
@@ -0,0 +1,137 @@
+package com.idcom4.cpu.components;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    A state file mapped in memory: the file is the memory, saving it is a Force.
+    The file keeps its format (see FileUtils.WriteFileShorts): a byte encoding, a values count, then the values, big endian.
+
+    The values starting after a 5 bytes header, they are not aligned, and can't be accessed atomically:
+    the accesses are ordered with fences instead, and CompareAndExchange takes a lock.
+    So do the writes, or a write from another core between the read and the write of a CompareAndExchange would be lost.
+    A buffer can't hold more than 2GB, so the content is mapped in chunks of CHUNK_SIZE values.
+
+    Depending on the map mode, the writes go to the file (READ_WRITE), or stay in memory (PRIVATE).
+ */
+public class MappedStorage_16 implements IMemoryStorage_16 {
+
+    private static final int HEADER_SIZE = 5;
+    private static final byte BYTE_ENCODING = 2;
+
+    private static final int CHUNK_BITS = 26;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int size;
+    private final MappedByteBuffer[] chunks;
+    private final FileChannel.MapMode mode;
+
+    // maps the file, creating it with size values if it doesn't exist
+    public MappedStorage_16(String fileName, int size, FileChannel.MapMode mode) throws IOException {
+        Path path = Path.of(fileName);
+        this.mode = mode;
+
+        if (!Files.exists(path)) CreateFile(path, size);
+
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] { StandardOpenOption.READ }
+                : new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+
+        // the mappings stay valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE) throw new IOException("Truncated state file: " + fileName);
+            byte byteEncoding = header.get();
+            if (byteEncoding != BYTE_ENCODING)
+                throw new IOException("Invalid byte encoding: " + byteEncoding + " (should be " + BYTE_ENCODING + ")");
+
+            this.size = header.getInt();
+            if ((long) HEADER_SIZE + this.size * 2L > channel.size()) throw new IOException("Truncated state file: " + fileName);
+
+            this.chunks = new MappedByteBuffer[(this.size + CHUNK_MASK) >>> CHUNK_BITS];
+            for (int i = 0; i < this.chunks.length; i++) {
+                int length = Math.min(CHUNK_SIZE, this.size - (i << CHUNK_BITS));
+                this.chunks[i] = channel.map(mode, HEADER_SIZE + ((long) i << CHUNK_BITS) * 2, length * 2L);
+            }
+        }
+    }
+
+    @Override
+    public int GetSize() {
+        return size;
+    }
+
+    @Override
+    public short GetValue(int address) {
+        short value = this.chunks[address >>> CHUNK_BITS].getShort((address & CHUNK_MASK) << 1);
+        VarHandle.acquireFence();
+        return value;
+    }
+
+    @Override
+    public synchronized void SetValue(int address, short value) {
+        VarHandle.releaseFence();
+        this.chunks[address >>> CHUNK_BITS].putShort((address & CHUNK_MASK) << 1, value);
+    }
+
+    @Override
+    public void CopyTo(int address, short[] content, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min(CHUNK_SIZE - (current & CHUNK_MASK), length - copied);
+            this.chunks[current >>> CHUNK_BITS].asShortBuffer().get(current & CHUNK_MASK, content, offset + copied, count);
+            copied += count;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public synchronized void CopyFrom(int address, short[] content, int offset, int length) {
+        VarHandle.releaseFence();
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min(CHUNK_SIZE - (current & CHUNK_MASK), length - copied);
+            this.chunks[current >>> CHUNK_BITS].asShortBuffer().put(current & CHUNK_MASK, content, offset + copied, count);
+            copied += count;
+        }
+    }
+
+    @Override
+    public synchronized short CompareAndExchange(int address, short expected, short value) {
+        short found = this.GetValue(address);
+        if (found == expected) this.SetValue(address, value);
+
+        return found;
+    }
+
+    @Override
+    public void Force() {
+        if (this.mode != FileChannel.MapMode.READ_WRITE) return;
+
+        for (MappedByteBuffer chunk : this.chunks) {
+            chunk.force();
+        }
+    }
+
+    private static void CreateFile(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).put(BYTE_ENCODING).putInt(size).flip();
+            while (header.hasRemaining()) channel.write(header);
+
+            // extended with zeros
+            if (size > 0) channel.write(ByteBuffer.allocate(1), HEADER_SIZE + size * 2L - 1);
+        }
+    }
+}
@@ -1,51 +1,228 @@
 package com.idcom4.cpu.components;
 
 import com.idcom4.Context;
+import com.idcom4.exceptions.IDException;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Memory accesses are acquire loads and release stores, so cores sharing a memory block (see CPU_16.CreateCores)
+    see each other's writes in order: a value read from a flag guarantees every write made before setting it is visible.
+    CompareAndExchange is atomic, locks can be built on it.
+
+    The content lives in a storage (see IMemoryStorage_16), on the heap by default. Heap storages are shared copy-on-write
+    with snapshots, so a snapshot or a fork costs a page table, not a copy of the memory (see HeapStorage_16).
+    Blocks created from a snapshot are always on the heap.
+ */
 public class MemoryBlock_16 {
 
+    /*
+        The pages and the size of a block at the time of the snapshot, never written again.
+        Any amount of blocks can be created from it, even in other VMs.
+     */
+    public record Snapshot(String name, boolean readOnly, int size, short[][] pages) {}
+
+    // a copy of a page of HeapStorage_16.PAGE_SIZE values (or less, for the last one)
+    public record DirtyPage(int index, short[] content) {}
+
+    protected final Context context;
     private final int size;
-    private final short[] content;
     private final String name;
     private final boolean readOnly;
 
-    public MemoryBlock_16(String name, boolean readonly, int size) {
+    private final IMemoryStorage_16 storage;
+
+    // the pages written since the last TakeDirtyPages, null while not tracked (see TrackDirtyPages)
+    private boolean[] dirtyPages = null;
+
+    public MemoryBlock_16(Context context, String name, boolean readonly, int size) {
+        this(context, name, readonly, new HeapStorage_16(size));
+    }
+
+    public MemoryBlock_16(Context context, String name, boolean readonly, short[] content) {
+        this(context, name, readonly, new HeapStorage_16(content));
+    }
 
+    public MemoryBlock_16(Context context, Snapshot snapshot) {
+        this(context, snapshot.name(), snapshot.readOnly(), new HeapStorage_16(snapshot.size(), snapshot.pages()));
+    }
+
+    public MemoryBlock_16(Context context, String name, boolean readonly, IMemoryStorage_16 storage) {
+
+        this.context = context;
         this.name = name;
         this.readOnly = readonly;
-        this.size = size;
-        this.content = new short[size];
+        this.size = storage.GetSize();
+        this.storage = storage;
     }
 
-    public MemoryBlock_16(String name, boolean readonly, short[] content) {
+    // for blocks holding no memory of their own, every access has to be overridden
+    protected MemoryBlock_16(Context context, String name, int size) {
 
+        this.context = context;
         this.name = name;
-        this.readOnly = readonly;
-        this.size = content.length;
-        this.content = content;
+        this.readOnly = false;
+        this.size = size;
+        this.storage = null;
     }
 
     public short GetValue(int address) {
         if (this.IsAddressOutOfBound(address)) return 0;
-        return content[address];
+        return this.storage.GetValue(address);
     }
 
     public void SetValue(int address, short value) {
         if (this.readOnly || this.IsAddressOutOfBound(address)) return;
-        content[address] = value;
+        this.storage.SetValue(address, value);
+
+        boolean[] dirtyPages = this.dirtyPages;
+        if (dirtyPages != null) dirtyPages[address >>> HeapStorage_16.PAGE_BITS] = true;
+    }
+
+    // writes the value if the current one is the expected one, returns the value found (the expected one on success)
+    public short CompareAndExchange(int address, short expected, short value) {
+        if (this.IsAddressOutOfBound(address)) return 0;
+        if (this.readOnly) return this.storage.GetValue(address);
+
+        short found = this.storage.CompareAndExchange(address, expected, value);
+        boolean[] dirtyPages = this.dirtyPages;
+        if (found == expected && dirtyPages != null) dirtyPages[address >>> HeapStorage_16.PAGE_BITS] = true;
+
+        return found;
+    }
+
+    /*
+        Range accesses, the range being checked once. Out of bounds ranges are neither read (the content is left as it was)
+        nor written, and read-only blocks silently ignore writes, like SetValue.
+        Blocks holding no memory of their own go through their GetValue and SetValue, one value at a time.
+     */
+
+    // copies length values from the address to content, starting at offset
+    public void GetValues(int address, short[] content, int offset, int length) {
+        if (this.IsRangeOutOfBound(address, length)) return;
+
+        if (this.storage != null) {
+            this.storage.CopyTo(address, content, offset, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            content[offset + i] = this.GetValue(address + i);
+        }
+    }
+
+    // writes length values of content, starting at offset, from the address
+    public void SetValues(int address, short[] content, int offset, int length) {
+        if (this.readOnly || this.IsRangeOutOfBound(address, length)) return;
+
+        if (this.storage != null) {
+            this.storage.CopyFrom(address, content, offset, length);
+            this.MarkDirty(address, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            this.SetValue(address + i, content[offset + i]);
+        }
+    }
+
+    public void Fill(int address, int length, short value) {
+        if (this.readOnly || this.IsRangeOutOfBound(address, length)) return;
+
+        if (this.storage != null) {
+            this.storage.Fill(address, length, value);
+            this.MarkDirty(address, length);
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            this.SetValue(address + i, value);
+        }
+    }
+
+    /*
+        Shares every page with the snapshot, the block copying them back on their next write
+        (other storages than the heap are copied).
+        The block must not be written while the snapshot is taken (from the thread running the VM, or while it's stopped).
+        Blocks without a content of their own (see MmioBlock_16) can't be snapshotted.
+     */
+    public Snapshot TakeSnapshot() throws IDException {
+        return new Snapshot(this.name, this.readOnly, this.size, this.storage.TakeSnapshot());
+    }
+
+    // writes the content back to where it persists, for storages persisting it themselves
+    public void Force() {
+        this.storage.Force();
+    }
+
+    /*
+        Tracks the pages written from now on, a byte per page, see TakeDirtyPages.
+        Must be called before the cores start (see Id16Bit.Start), for them to see it.
+     */
+    public void TrackDirtyPages() {
+        if (this.dirtyPages == null) this.dirtyPages = new boolean[(int) ((this.size + (long) HeapStorage_16.PAGE_SIZE - 1) >>> HeapStorage_16.PAGE_BITS)];
+    }
+
+    /*
+        Copies the pages written since the last call, and tracks the writes from there.
+        Must be called while no core runs (see Id16Bit.RunAtSafepoint), for the pages to be consistent with each other.
+     */
+    public List<DirtyPage> TakeDirtyPages() {
+        List<DirtyPage> pages = new ArrayList<>();
+        if (this.dirtyPages == null) return pages;
+
+        for (int i = 0; i < this.dirtyPages.length; i++) {
+            if (!this.dirtyPages[i]) continue;
+            this.dirtyPages[i] = false;
+
+            int start = i << HeapStorage_16.PAGE_BITS;
+            short[] content = new short[Math.min(HeapStorage_16.PAGE_SIZE, size - start)];
+            this.storage.CopyTo(start, content, 0, content.length);
+            pages.add(new DirtyPage(i, content));
+        }
+
+        return pages;
     }
 
     public int GetSize() {
         return size;
     }
 
+    // the amount of values actually held in memory, less than the size for sparse storages
+    public long GetResidentSize() {
+        return this.storage.GetResidentSize();
+    }
+
+    // a copy of the whole content
     public short[] GetContent() {
+        short[] content = new short[size];
+        this.storage.CopyTo(0, content, 0, size);
+
         return content;
     }
 
+    private void MarkDirty(int address, int length) {
+        boolean[] dirtyPages = this.dirtyPages;
+        if (dirtyPages == null || length == 0) return;
+
+        for (int page = address >>> HeapStorage_16.PAGE_BITS; page <= (address + length - 1) >>> HeapStorage_16.PAGE_BITS; page++) {
+            dirtyPages[page] = true;
+        }
+    }
+
+    private boolean IsRangeOutOfBound(int address, int length) {
+        if (address < 0 || length < 0 || (long) address + length > size) {
+            this.context.logger.errln("Memory block \"" + this.name + "\" range overflow: " + address + " + " + length + " [size: " + size + "]");
+            return true;
+        }
+
+        return false;
+    }
+
     private boolean IsAddressOutOfBound(int address) {
         if (address < 0 || address >= size) {
-            Context.INSTANCE.logger.errln("Memory block \"" + this.name + "\" address overflow: " + address + " [size: " + size + "]");
+            this.context.logger.errln("Memory block \"" + this.name + "\" address overflow: " + address + " [size: " + size + "]");
             return true;
         }
 
@@ -1,32 +1,94 @@
 package com.idcom4.cpu.components;
 
 import com.idcom4.Context;
-import com.idcom4.utils.Pair;
-import com.idcom4.utils.logger.ILogger;
+import com.idcom4.exceptions.IDException;
 
 import java.util.Arrays;
-import java.util.Optional;
 
-public class MemoryMapper_16 extends MemoryBlock_16 {
+/*
+    Translates an address of the whole memory (32 bits with MEM_EXTENSION) to a block and an address in it.
 
-    MemoryBlock_16[] memoryBlocks;
+    The address space is cut in pages of 2^tableBits addresses, and the table holds, for each page,
+    the index of the block its first address belongs to. The pages are sized down to the smallest block,
+    so a page spans at most two blocks, told apart by comparing the address to the start of the second one:
+    a translation is a shift, a load and a compare, whatever the amount of blocks.
+    The table holds at most 2^MAX_TABLE_BITS entries though: past that, the pages are larger than the smallest block,
+    and the ones spanning more than two blocks are marked (the bitwise not of their first block) and binary searched.
 
-    public MemoryMapper_16(MemoryBlock_16[] memoryBlocks) {
-        // reduce all memory blocks size
-        super("MemoryMapper", false, Arrays.stream(memoryBlocks).map(MemoryBlock_16::GetSize).reduce(0, Integer::sum));
+    It holds no memory of its own, so it isn't a memory block: a snapshot of it is the snapshots of its blocks.
+ */
+public class MemoryMapper_16 {
+
+    public record Snapshot(MemoryBlock_16.Snapshot[] blocks) {}
+
+    private static final int MAX_TABLE_BITS = 16;
+    // the values a bulk copy or compare reads at once, into a buffer per thread (two chunks, for a compare)
+    private static final int BULK_CHUNK_SIZE = 4096;
+    // results of Compare besides the offset of the first different value
+    public static final int RANGES_EQUAL = -1;
+    public static final int RANGE_OUT_OF_MEMORY = -2;
+
+    private static final ThreadLocal<short[]> BULK_BUFFERS = ThreadLocal.withInitial(() -> new short[2 * BULK_CHUNK_SIZE]);
+
+    private final Context context;
+    private final int size;
+    final MemoryBlock_16[] memoryBlocks;
+
+    // the address each block starts at, plus the end of the memory
+    private final int[] blockStarts;
+    private final int tableBits;
+    private final int[] table;
+
+    // whether any block is a device (see MmioBlock_16)
+    private final boolean hasDevices;
+
+    // copied on change, from any thread: writes only read it
+    private volatile IMemoryWriteListener[] writeListeners = new IMemoryWriteListener[0];
+
+    public MemoryMapper_16(Context context, MemoryBlock_16[] memoryBlocks) {
+        // reduce all memory blocks size, at most 2^31 - 1 addresses
+        int size = Arrays.stream(memoryBlocks).map(MemoryBlock_16::GetSize).reduce(0, Math::addExact);
+
+        this.context = context;
+        this.size = size;
         this.memoryBlocks = memoryBlocks;
+
+        this.blockStarts = new int[memoryBlocks.length + 1];
+        for (int i = 0; i < memoryBlocks.length; i++) {
+            this.blockStarts[i + 1] = this.blockStarts[i] + memoryBlocks[i].GetSize();
+        }
+
+        // empty blocks hold no address, they only make the pages around them span more blocks
+        int smallest = Arrays.stream(memoryBlocks).mapToInt(MemoryBlock_16::GetSize).filter(blockSize -> blockSize > 0).min().orElse(1);
+        int blockBits = 31 - Integer.numberOfLeadingZeros(smallest);
+        int addressBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+        this.tableBits = Math.max(blockBits, addressBits - MAX_TABLE_BITS);
+        this.table = new int[(int) ((size + (1L << this.tableBits) - 1) >>> this.tableBits)];
+
+        int first = 0;
+        int last = 0;
+        for (int page = 0; page < this.table.length; page++) {
+            int start = page << this.tableBits;
+            int end = (int) Math.min(size, (long) start + (1L << this.tableBits)) - 1;
+            while (start >= this.blockStarts[first + 1]) first++;
+            while (end >= this.blockStarts[last + 1]) last++;
+
+            this.table[page] = last - first <= 1 ? first : ~first;
+        }
+
+        this.hasDevices = Arrays.stream(memoryBlocks).anyMatch(memoryBlock -> memoryBlock instanceof MmioBlock_16);
     }
 
-    @Override
-    public short GetValue(int address) {
-        var optional = this.GetMemoryBlockFromAddress(address);
-        if (optional.isEmpty()) return 0x0;
+    // the blocks share their pages with the snapshot until written, see MemoryBlock_16
+    public MemoryMapper_16(Context context, Snapshot snapshot) {
+        this(context, Arrays.stream(snapshot.blocks()).map(block -> new MemoryBlock_16(context, block)).toArray(MemoryBlock_16[]::new));
+    }
 
-        Pair<MemoryBlock_16, Integer> memoryData = optional.get();
-        MemoryBlock_16 block = memoryData.First;
-        Integer blockRelativeAddress = memoryData.Second;
+    public short GetValue(int address) {
+        int block = this.GetBlockIndex(address);
+        if (block < 0) return 0x0;
 
-        return block.GetValue(blockRelativeAddress);
+        return this.memoryBlocks[block].GetValue(address - this.blockStarts[block]);
     }
 
     public short GetValue(short addrHigh, short addrLow) {
@@ -34,37 +96,234 @@ public class MemoryMapper_16 extends MemoryBlock_16 {
         return this.GetValue(GetFullAddress(addrHigh, addrLow));
     }
 
-    @Override
     public void SetValue(int address, short value) {
-        var optional = this.GetMemoryBlockFromAddress(address);
-        if (optional.isEmpty()) return;
+        int block = this.GetBlockIndex(address);
+        if (block < 0) return;
 
-        Pair<MemoryBlock_16, Integer> memoryData = optional.get();
-        MemoryBlock_16 block = memoryData.First;
-        Integer blockRelativeAddress = memoryData.Second;
+        this.memoryBlocks[block].SetValue(address - this.blockStarts[block], value);
 
-        block.SetValue(blockRelativeAddress, value);
+        for (IMemoryWriteListener listener : writeListeners) {
+            listener.OnWrite(address);
+        }
     }
 
     public void SetValue(short addrHigh, short addrLow, short value) {
         this.SetValue(GetFullAddress(addrHigh, addrLow), value);
     }
 
+    public short CompareAndExchange(int address, short expected, short value) {
+        int block = this.GetBlockIndex(address);
+        if (block < 0) return 0x0;
+
+        short found = this.memoryBlocks[block].CompareAndExchange(address - this.blockStarts[block], expected, value);
+
+        if (found == expected) {
+            for (IMemoryWriteListener listener : writeListeners) {
+                listener.OnWrite(address);
+            }
+        }
+
+        return found;
+    }
+
+    public short CompareAndExchange(short addrHigh, short addrLow, short expected, short value) {
+        return this.CompareAndExchange(GetFullAddress(addrHigh, addrLow), expected, value);
+    }
+
     private int GetFullAddress(short addrHigh, short addrLow) {
         return (addrHigh << 16) | ((int)addrLow & 0xFFFF);
     }
 
-    private Optional<Pair<MemoryBlock_16, Integer>>  GetMemoryBlockFromAddress(int address) {
+    /*
+        Bulk operations on length addresses, split at the block boundaries: each block copies or fills its part at once
+        (see MemoryBlock_16.GetValues). A range running out of the memory isn't accessed at all.
+     */
+
+    // like a move of each value, but overlapping ranges are copied as if through a temporary buffer
+    public void Copy(int source, int destination, int length) {
+        if (length <= 0 || this.IsRangeOutOfMemory(source, length) || this.IsRangeOutOfMemory(destination, length)) return;
+
+        short[] buffer = BULK_BUFFERS.get();
+        // copying forward would overwrite the source before reading it
+        boolean backward = destination > source && destination < source + length;
+
+        for (int done = 0; done < length; done += BULK_CHUNK_SIZE) {
+            int count = Math.min(BULK_CHUNK_SIZE, length - done);
+            int offset = backward ? length - done - count : done;
+
+            this.Read(source + offset, buffer, 0, count);
+            this.Write(destination + offset, buffer, 0, count);
+        }
+
+        this.NotifyWrites(destination, length);
+    }
+
+    public void Fill(int destination, int length, short value) {
+        if (length <= 0 || this.IsRangeOutOfMemory(destination, length)) return;
+
+        for (int done = 0; done < length; ) {
+            int address = destination + done;
+            int block = this.GetBlockIndex(address);
+            int count = Math.min(length - done, this.blockStarts[block + 1] - address);
+
+            this.memoryBlocks[block].Fill(address - this.blockStarts[block], count, value);
+            done += count;
+        }
+
+        this.NotifyWrites(destination, length);
+    }
+
+    // the offset of the first different value, RANGES_EQUAL if none, RANGE_OUT_OF_MEMORY if a range isn't all in the memory
+    public int Compare(int first, int second, int length) {
+        if (length <= 0) return RANGES_EQUAL;
+        if (this.IsRangeOutOfMemory(first, length) || this.IsRangeOutOfMemory(second, length)) return RANGE_OUT_OF_MEMORY;
+
+        short[] buffer = BULK_BUFFERS.get();
+
+        for (int done = 0; done < length; done += BULK_CHUNK_SIZE) {
+            int count = Math.min(BULK_CHUNK_SIZE, length - done);
+            this.Read(first + done, buffer, 0, count);
+            this.Read(second + done, buffer, BULK_CHUNK_SIZE, count);
+
+            int mismatch = Arrays.mismatch(buffer, 0, count, buffer, BULK_CHUNK_SIZE, BULK_CHUNK_SIZE + count);
+            if (mismatch >= 0) return done + mismatch;
+        }
+
+        return RANGES_EQUAL;
+    }
+
+    // the range is in the memory
+    private void Read(int address, short[] buffer, int offset, int length) {
+        for (int done = 0; done < length; ) {
+            int block = this.GetBlockIndex(address + done);
+            int count = Math.min(length - done, this.blockStarts[block + 1] - (address + done));
+
+            this.memoryBlocks[block].GetValues(address + done - this.blockStarts[block], buffer, offset + done, count);
+            done += count;
+        }
+    }
+
+    // the range is in the memory, the listeners aren't notified
+    private void Write(int address, short[] buffer, int offset, int length) {
+        for (int done = 0; done < length; ) {
+            int block = this.GetBlockIndex(address + done);
+            int count = Math.min(length - done, this.blockStarts[block + 1] - (address + done));
+
+            this.memoryBlocks[block].SetValues(address + done - this.blockStarts[block], buffer, offset + done, count);
+            done += count;
+        }
+    }
+
+    private void NotifyWrites(int address, int length) {
+        for (IMemoryWriteListener listener : writeListeners) {
+            listener.OnWriteRange(address, length);
+        }
+    }
+
+    private boolean IsRangeOutOfMemory(int address, int length) {
+        if (address < 0 || (long) address + length > this.GetSize()) {
+            this.context.logger.errln("Memory range out of the memory: %s (%04x) + %s", address, address, length);
+            return true;
+        }
+
+        return false;
+    }
+
+    // whether a device (see MmioBlock_16) holds any of the length addresses from address
+    public boolean IsDeviceRange(int address, int length) {
+        if (!this.hasDevices) return false;
+
+        for (int current = Math.max(0, address); current < address + length && current < this.GetSize(); current++) {
+            if (this.memoryBlocks[this.FindBlock(current)] instanceof MmioBlock_16) return true;
+        }
+
+        return false;
+    }
+
+    // -1 if no block holds the address
+    private int GetBlockIndex(int address) {
+        if (address < 0 || address >= this.GetSize()) {
+            this.context.logger.errln("Memory Block not found for address: %s (%04x)\n", address, address);
+            return -1;
+        }
+
+        return this.FindBlock(address);
+    }
+
+    // the address must be in the memory
+    private int FindBlock(int address) {
+        int entry = this.table[address >>> this.tableBits];
+        if (entry < 0) return this.SearchBlock(address, ~entry);
+
+        return address < this.blockStarts[entry + 1] ? entry : entry + 1;
+    }
+
+    // the last block starting at or before the address, from the given one: empty blocks starting there too are skipped
+    private int SearchBlock(int address, int from) {
+        int low = from;
+        int high = this.memoryBlocks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (this.blockStarts[middle] <= address) low = middle;
+            else high = middle - 1;
+        }
+
+        return low;
+    }
+
+    // see MemoryBlock_16.TakeSnapshot. Devices have a state of their own, out of the memory: a memory holding any can't be snapshotted
+    public Snapshot TakeSnapshot() throws IDException {
+        for (MemoryBlock_16 memoryBlock : this.memoryBlocks) {
+            if (memoryBlock instanceof MmioBlock_16)
+                throw new IDException("The memory can't be snapshotted: memory block \"" + memoryBlock.GetName() + "\" is a device");
+        }
+
+        MemoryBlock_16.Snapshot[] snapshots = new MemoryBlock_16.Snapshot[this.memoryBlocks.length];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = this.memoryBlocks[i].TakeSnapshot();
+        }
+
+        return new Snapshot(snapshots);
+    }
+
+    public long GetResidentSize() {
+        long resident = 0;
         for (MemoryBlock_16 memoryBlock : memoryBlocks) {
-            if (address < memoryBlock.GetSize()) {
-                return Optional.of(new Pair<>(memoryBlock, address));
-            }
+            resident += memoryBlock.GetResidentSize();
+        }
 
-            address -= memoryBlock.GetSize();
+        return resident;
+    }
+
+    public void Force() {
+        for (MemoryBlock_16 memoryBlock : memoryBlocks) {
+            memoryBlock.Force();
+        }
+    }
+
+    public short[] GetContent() {
+        short[] content = new short[this.GetSize()];
+        int start = 0;
+        for (MemoryBlock_16 memoryBlock : memoryBlocks) {
+            System.arraycopy(memoryBlock.GetContent(), 0, content, start, memoryBlock.GetSize());
+            start += memoryBlock.GetSize();
         }
 
-        Context.INSTANCE.logger.errln("Memory Block not found for address: %s (%04x)\n", address, address);
-        return Optional.empty();
+        return content;
+    }
+
+    public synchronized void AddWriteListener(IMemoryWriteListener listener) {
+        IMemoryWriteListener[] writeListeners = Arrays.copyOf(this.writeListeners, this.writeListeners.length + 1);
+        writeListeners[writeListeners.length - 1] = listener;
+        this.writeListeners = writeListeners;
+    }
+
+    public synchronized void RemoveWriteListener(IMemoryWriteListener listener) {
+        this.writeListeners = Arrays.stream(this.writeListeners).filter(l -> l != listener).toArray(IMemoryWriteListener[]::new);
+    }
+
+    public int GetSize() {
+        return size;
     }
 
     public MemoryBlock_16[] GetMemoryBlocks() {
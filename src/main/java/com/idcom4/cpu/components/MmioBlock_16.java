@@ -0,0 +1,71 @@
+package com.idcom4.cpu.components;
+
+import com.idcom4.Context;
+import com.idcom4.devices.IDevice_16;
+import com.idcom4.exceptions.IDException;
+
+/*
+    A region of the memory whose accesses go to a device (see IDevice_16), the address being the offset in the region.
+    The memory mapper already checked the address, an access is a single call to the device.
+
+    A device has no content: it reads as zeros in GetContent, and can't be snapshotted,
+    nor can the memories holding it (MemoryMapper_16.TakeSnapshot fails before snapshotting any block).
+    The code it holds is never cached, its registers may change without being written (see CPU_16.Fetch).
+ */
+public class MmioBlock_16 extends MemoryBlock_16 {
+
+    private final IDevice_16 device;
+
+    public MmioBlock_16(Context context, String name, int size, IDevice_16 device) {
+        super(context, name, size);
+
+        this.device = device;
+    }
+
+    @Override
+    public short GetValue(int address) {
+        return this.device.Read(address);
+    }
+
+    @Override
+    public void SetValue(int address, short value) {
+        this.device.Write(address, value);
+    }
+
+    @Override
+    public short CompareAndExchange(int address, short expected, short value) {
+        return this.device.CompareAndExchange(address, expected, value);
+    }
+
+    @Override
+    public Snapshot TakeSnapshot() throws IDException {
+        throw new IDException("The memory block \"" + this.GetName() + "\" can't be snapshotted: it is a device");
+    }
+
+    @Override
+    public void Force() {}
+
+    @Override
+    public long GetResidentSize() {
+        return 0;
+    }
+
+    @Override
+    public short[] GetContent() {
+        return new short[this.GetSize()];
+    }
+
+    // see IDevice_16.Connect
+    public void Connect(InterruptController_16 interrupts) {
+        this.device.Connect(interrupts);
+    }
+
+    // see IDevice_16.Disconnect
+    public void Disconnect(InterruptController_16 interrupts) {
+        this.device.Disconnect(interrupts);
+    }
+
+    public IDevice_16 GetDevice() {
+        return this.device;
+    }
+}
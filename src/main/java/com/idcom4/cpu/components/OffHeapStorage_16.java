@@ -0,0 +1,103 @@
+package com.idcom4.cpu.components;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+    Native memory, so a large memory block weighs nothing on the garbage collector.
+    A buffer can't hold more than 2GB, so the content is split in chunks of CHUNK_SIZE values.
+
+    Direct buffers still count against -XX:MaxDirectMemorySize (the max heap size by default):
+    a memory larger than the heap needs it raised. They are only freed once garbage collected.
+
+    Buffers have no atomic operation on 16 bits values, so CompareAndExchange works on the aligned 32 bits word holding the value.
+ */
+public class OffHeapStorage_16 implements IMemoryStorage_16 {
+
+    private static final int CHUNK_BITS = 26;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final VarHandle CONTENT = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.nativeOrder());
+    private static final VarHandle WORDS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final int size;
+    private final ByteBuffer[] chunks;
+
+    public OffHeapStorage_16(int size) {
+        this.size = size;
+        this.chunks = new ByteBuffer[(size + CHUNK_MASK) >>> CHUNK_BITS];
+        for (int i = 0; i < this.chunks.length; i++) {
+            int length = Math.min(CHUNK_SIZE, size - (i << CHUNK_BITS));
+            // atomic accesses need aligned values, and the last value a whole word
+            this.chunks[i] = ByteBuffer.allocateDirect(length * 2 + 2 + 3).alignedSlice(4).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    public OffHeapStorage_16(short[] content) {
+        this(content.length);
+        for (int address = 0; address < content.length; address++) {
+            CONTENT.set(this.chunks[address >>> CHUNK_BITS], (address & CHUNK_MASK) << 1, content[address]);
+        }
+    }
+
+    @Override
+    public int GetSize() {
+        return size;
+    }
+
+    @Override
+    public short GetValue(int address) {
+        return (short) CONTENT.getAcquire(this.chunks[address >>> CHUNK_BITS], (address & CHUNK_MASK) << 1);
+    }
+
+    @Override
+    public void SetValue(int address, short value) {
+        CONTENT.setRelease(this.chunks[address >>> CHUNK_BITS], (address & CHUNK_MASK) << 1, value);
+    }
+
+    @Override
+    public void CopyTo(int address, short[] content, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min(CHUNK_SIZE - (current & CHUNK_MASK), length - copied);
+            this.chunks[current >>> CHUNK_BITS].asShortBuffer().get(current & CHUNK_MASK, content, offset + copied, count);
+            copied += count;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void CopyFrom(int address, short[] content, int offset, int length) {
+        VarHandle.releaseFence();
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min(CHUNK_SIZE - (current & CHUNK_MASK), length - copied);
+            this.chunks[current >>> CHUNK_BITS].asShortBuffer().put(current & CHUNK_MASK, content, offset + copied, count);
+            copied += count;
+        }
+    }
+
+    @Override
+    public short CompareAndExchange(int address, short expected, short value) {
+        ByteBuffer chunk = this.chunks[address >>> CHUNK_BITS];
+        int index = (address & CHUNK_MASK) << 1;
+        int wordIndex = index & ~3;
+        // the value is the high half of the word in its second half on little endian, or in its first half on big endian
+        int shift = ((index & 2) != 0) == LITTLE_ENDIAN ? 16 : 0;
+
+        while (true) {
+            int word = (int) WORDS.getVolatile(chunk, wordIndex);
+            short found = (short) (word >>> shift);
+            if (found != expected) return found;
+
+            int updated = (word & ~(0xFFFF << shift)) | ((value & 0xFFFF) << shift);
+            if (WORDS.compareAndSet(chunk, wordIndex, word, updated)) return found;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.idcom4.cpu.components;
+
+/*
+    Primitive storage for the CPU registers, indexed by their static address,
+    so reading or writing a register never boxes its value.
+ */
+public class RegisterFile_16 {
+
+    private final short[] values;
+
+    public RegisterFile_16(int size) {
+        this.values = new short[size];
+    }
+
+    public short GetValue(int register) {
+        return values[register];
+    }
+
+    public void SetValue(int register, short value) {
+        values[register] = value;
+    }
+
+    public short Increment(int register) {
+        return ++values[register];
+    }
+
+    public short Decrement(int register) {
+        return --values[register];
+    }
+
+    public int GetSize() {
+        return values.length;
+    }
+}
@@ -0,0 +1,151 @@
+package com.idcom4.cpu.components;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    A page is only allocated on its first write, untouched pages read as zeros: a guest can be given
+    a large address space (up to the whole extended one) and only costs the pages it writes to.
+
+    The pages (of HeapStorage_16.PAGE_SIZE values) are found through a two levels table, whose second level tables
+    are allocated on demand too, so an empty storage of 2^31 values weighs a few kilobytes.
+    Pages and tables are installed with a compare and set, the cores writing to a new page concurrently agree on one.
+ */
+public class SparseStorage_16 implements IMemoryStorage_16 {
+
+    private static final int PAGE_BITS = HeapStorage_16.PAGE_BITS;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+    private static final int TABLE_BITS = 10;
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+
+    private static final VarHandle CONTENT = MethodHandles.arrayElementVarHandle(short[].class);
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(short[][].class);
+    private static final VarHandle TABLES = MethodHandles.arrayElementVarHandle(short[][][].class);
+
+    private final int size;
+    private final short[][][] tables;
+    private final AtomicInteger residentPages = new AtomicInteger();
+
+    public SparseStorage_16(int size) {
+        this.size = size;
+        int pageCount = (int) ((size + (long) PAGE_MASK) >>> PAGE_BITS);
+        this.tables = new short[(pageCount + TABLE_MASK) >>> TABLE_BITS][][];
+    }
+
+    @Override
+    public int GetSize() {
+        return size;
+    }
+
+    // the values actually allocated
+    @Override
+    public long GetResidentSize() {
+        return (long) this.residentPages.get() << PAGE_BITS;
+    }
+
+    @Override
+    public short GetValue(int address) {
+        short[] page = this.GetPage(address >>> PAGE_BITS);
+        if (page == null) return 0;
+
+        return (short) CONTENT.getAcquire(page, address & PAGE_MASK);
+    }
+
+    @Override
+    public void SetValue(int address, short value) {
+        CONTENT.setRelease(this.GetWritablePage(address >>> PAGE_BITS), address & PAGE_MASK, value);
+    }
+
+    @Override
+    public short CompareAndExchange(int address, short expected, short value) {
+        // nothing to allocate for a failing exchange
+        if (expected != 0 && this.GetPage(address >>> PAGE_BITS) == null) return 0;
+
+        return (short) CONTENT.compareAndExchange(this.GetWritablePage(address >>> PAGE_BITS), address & PAGE_MASK, expected, value);
+    }
+
+    // copies the allocated pages only, the others being HeapStorage_16's page of zeros
+    @Override
+    public short[][] TakeSnapshot() {
+        short[][] pages = new short[(int) ((this.size + (long) PAGE_MASK) >>> PAGE_BITS)][];
+        for (int index = 0; index < pages.length; index++) {
+            short[] page = this.GetPage(index);
+            pages[index] = page == null ? HeapStorage_16.ZERO_PAGE : page.clone();
+        }
+
+        return pages;
+    }
+
+    @Override
+    public void CopyTo(int address, short[] content, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min((PAGE_MASK + 1) - (current & PAGE_MASK), length - copied);
+
+            short[] page = this.GetPage(current >>> PAGE_BITS);
+            if (page == null) Arrays.fill(content, offset + copied, offset + copied + count, (short) 0);
+            else System.arraycopy(page, current & PAGE_MASK, content, offset + copied, count);
+
+            copied += count;
+        }
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void CopyFrom(int address, short[] content, int offset, int length) {
+        VarHandle.releaseFence();
+        int copied = 0;
+        while (copied < length) {
+            int current = address + copied;
+            int count = Math.min((PAGE_MASK + 1) - (current & PAGE_MASK), length - copied);
+            System.arraycopy(content, offset + copied, this.GetWritablePage(current >>> PAGE_BITS), current & PAGE_MASK, count);
+            copied += count;
+        }
+    }
+
+    // zeroing a page never written doesn't allocate it
+    @Override
+    public void Fill(int address, int length, short value) {
+        VarHandle.releaseFence();
+        int filled = 0;
+        while (filled < length) {
+            int current = address + filled;
+            int count = Math.min((PAGE_MASK + 1) - (current & PAGE_MASK), length - filled);
+
+            short[] page = value == 0 ? this.GetPage(current >>> PAGE_BITS) : this.GetWritablePage(current >>> PAGE_BITS);
+            if (page != null) Arrays.fill(page, current & PAGE_MASK, (current & PAGE_MASK) + count, value);
+
+            filled += count;
+        }
+    }
+
+    // null if never written
+    private short[] GetPage(int index) {
+        short[][] table = (short[][]) TABLES.getAcquire(this.tables, index >>> TABLE_BITS);
+        if (table == null) return null;
+
+        return (short[]) PAGES.getAcquire(table, index & TABLE_MASK);
+    }
+
+    private short[] GetWritablePage(int index) {
+        short[][] table = (short[][]) TABLES.getAcquire(this.tables, index >>> TABLE_BITS);
+        if (table == null) {
+            short[][] created = new short[1 << TABLE_BITS][];
+            table = (short[][]) TABLES.compareAndExchange(this.tables, index >>> TABLE_BITS, (short[][]) null, created);
+            if (table == null) table = created;
+        }
+
+        short[] page = (short[]) PAGES.getAcquire(table, index & TABLE_MASK);
+        if (page != null) return page;
+
+        short[] created = new short[PAGE_MASK + 1];
+        page = (short[]) PAGES.compareAndExchange(table, index & TABLE_MASK, (short[]) null, created);
+        if (page != null) return page;
+
+        this.residentPages.incrementAndGet();
+        return created;
+    }
+}
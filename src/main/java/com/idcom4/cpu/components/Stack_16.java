@@ -1,25 +1,137 @@
 package com.idcom4.cpu.components;
 
+import com.idcom4.Context;
+
+import java.util.Arrays;
+
+/*
+    The stack of a core, only ever written by it: a plain array, grown on demand up to the size of the stack,
+    so a program that barely pushes barely costs anything.
+
+    Push and Pop don't check anything, the CPU checks IsFull and IsEmpty first and raises a fault interrupt instead
+    (see CPU_16.EInterrupts), leaving the stack pointer as it was.
+ */
 public class Stack_16 extends MemoryBlock_16 {
 
-    private final Register_16 stackPointer;
+    // the stack pointer being a signed 16 bits value, it can't address more
+    public static final int MAX_SIZE = Short.MAX_VALUE;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final RegisterFile_16 registers;
+    private final int stackPointer;
+
+    // the values up to the highest pushed so far
+    private short[] values;
+
+    public Stack_16(Context context, int size, RegisterFile_16 registers, int stackPointer) {
+        super(context, "Stack", size);
+
+        this.registers = registers;
+        this.stackPointer = stackPointer;
+        this.values = new short[Math.min(size, INITIAL_CAPACITY)];
+    }
 
-    public Stack_16(int size, Register_16 stackPointer) {
-        super("Stack", false, size);
+    public Stack_16(Context context, Snapshot snapshot, RegisterFile_16 registers, int stackPointer) {
+        super(context, snapshot.name(), snapshot.size());
 
+        this.registers = registers;
         this.stackPointer = stackPointer;
+
+        // the pages past the last one written are all zeros
+        int pages = snapshot.pages().length;
+        while (pages > 0 && snapshot.pages()[pages - 1] == HeapStorage_16.ZERO_PAGE) pages--;
+
+        this.values = new short[Math.min(snapshot.size(), Math.max(INITIAL_CAPACITY, pages << HeapStorage_16.PAGE_BITS))];
+        for (int i = 0; i < pages; i++) {
+            int start = i << HeapStorage_16.PAGE_BITS;
+            System.arraycopy(snapshot.pages()[i], 0, this.values, start, Math.min(HeapStorage_16.PAGE_SIZE, this.values.length - start));
+        }
     }
 
+    public boolean IsFull() {
+        short pointer = this.registers.GetValue(this.stackPointer);
+        return pointer < 0 || pointer >= this.GetSize();
+    }
+
+    // whether count values can be pushed
+    public boolean HasRoom(int count) {
+        short pointer = this.registers.GetValue(this.stackPointer);
+        return pointer >= 0 && pointer + count <= this.GetSize();
+    }
+
+    public boolean IsEmpty() {
+        short pointer = this.registers.GetValue(this.stackPointer);
+        return pointer <= 0 || pointer > this.GetSize();
+    }
+
+    // the stack must not be full
     public void Push(short value) {
-        short pointer = stackPointer.GetValue();
-        this.SetValue(pointer, value);
+        short pointer = this.registers.GetValue(this.stackPointer);
+        if (pointer >= this.values.length) this.Grow(pointer + 1);
 
-        stackPointer.SetValue((short)(pointer + 1));
+        this.values[pointer] = value;
+        this.registers.SetValue(this.stackPointer, (short) (pointer + 1));
     }
 
+    // the stack must not be empty
     public short Pop() {
-        stackPointer.SetValue((short) (stackPointer.GetValue() - 1));
+        short pointer = this.registers.Decrement(this.stackPointer);
+        return pointer < this.values.length ? this.values[pointer] : 0;
+    }
+
+    /*
+        Direct accesses, for the profilers (possibly from another thread) and the snapshots.
+        Out of bounds addresses read as 0 and aren't written, silently.
+     */
+
+    @Override
+    public short GetValue(int address) {
+        short[] values = this.values;
+        return address >= 0 && address < values.length ? values[address] : 0;
+    }
+
+    @Override
+    public void SetValue(int address, short value) {
+        if (address < 0 || address >= this.GetSize()) return;
+        if (address >= this.values.length) this.Grow(address + 1);
+
+        this.values[address] = value;
+    }
+
+    // only its core accesses the stack, nothing to synchronize with
+    @Override
+    public short CompareAndExchange(int address, short expected, short value) {
+        short found = this.GetValue(address);
+        if (found == expected) this.SetValue(address, value);
+
+        return found;
+    }
+
+    @Override
+    public Snapshot TakeSnapshot() {
+        short[][] pages = new short[(this.GetSize() + HeapStorage_16.PAGE_SIZE - 1) >>> HeapStorage_16.PAGE_BITS][];
+        for (int i = 0; i < pages.length; i++) {
+            int start = i << HeapStorage_16.PAGE_BITS;
+            pages[i] = start < this.values.length ? Arrays.copyOfRange(this.values, start, start + HeapStorage_16.PAGE_SIZE) : HeapStorage_16.ZERO_PAGE;
+        }
+
+        return new Snapshot(this.GetName(), false, this.GetSize(), pages);
+    }
+
+    @Override
+    public void Force() {}
+
+    @Override
+    public long GetResidentSize() {
+        return this.values.length;
+    }
+
+    @Override
+    public short[] GetContent() {
+        return Arrays.copyOf(this.values, this.GetSize());
+    }
 
-        return this.GetValue(stackPointer.GetValue());
+    private void Grow(int capacity) {
+        this.values = Arrays.copyOf(this.values, Math.min(this.GetSize(), Math.max(capacity, this.values.length * 2)));
     }
 }
@@ -0,0 +1,63 @@
+package com.idcom4.devices;
+
+import com.idcom4.Context;
+
+import java.io.PrintStream;
+
+/*
+    Prints to the standard output, whole strings being written with a MOVE each:
+    0x0     CHAR        write: appends the character
+    0x1     NUMBER      write: appends the value, in decimal
+    0x2     FLUSH       write: prints what was appended
+    A new line prints what was appended too. Reads are always 0.
+ */
+public class ConsoleDevice_16 implements IDevice_16 {
+
+    public static class Provider implements IDeviceProvider_16 {
+
+        @Override
+        public String GetName() {
+            return "console";
+        }
+
+        @Override
+        public IDevice_16 Create(Context context, int size) {
+            return new ConsoleDevice_16(System.out);
+        }
+    }
+
+    private static final int CHAR = 0x0;
+    private static final int NUMBER = 0x1;
+    private static final int FLUSH = 0x2;
+
+    private final PrintStream out;
+    private final StringBuilder line = new StringBuilder();
+
+    public ConsoleDevice_16(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public short Read(int offset) {
+        return 0;
+    }
+
+    @Override
+    public synchronized void Write(int offset, short value) {
+        switch (offset) {
+            case CHAR -> {
+                this.line.append((char) value);
+                if (value == '\n') this.Flush();
+            }
+            case NUMBER -> this.line.append(value);
+            case FLUSH -> this.Flush();
+            default -> {}
+        }
+    }
+
+    private void Flush() {
+        this.out.print(this.line);
+        this.out.flush();
+        this.line.setLength(0);
+    }
+}
@@ -0,0 +1,38 @@
+package com.idcom4.devices;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/*
+    The device providers a VM creates its devices from (see Context.devices), by name, the first one found winning.
+    The providers of the class path make the default registry, a host may give each VM its own instead.
+ */
+public final class DeviceRegistry {
+
+    // loaded on first use, shared by every context using it: it never changes
+    private static final class ClassPath {
+        static final DeviceRegistry INSTANCE = new DeviceRegistry(ServiceLoader.load(IDeviceProvider_16.class));
+    }
+
+    private final Map<String, IDeviceProvider_16> providers = new TreeMap<>();
+
+    public DeviceRegistry(Iterable<? extends IDeviceProvider_16> providers) {
+        for (IDeviceProvider_16 provider : providers) {
+            this.providers.putIfAbsent(provider.GetName(), provider);
+        }
+    }
+
+    public static DeviceRegistry FromClassPath() {
+        return ClassPath.INSTANCE;
+    }
+
+    // null if unknown
+    public IDeviceProvider_16 Get(String name) {
+        return this.providers.get(name);
+    }
+
+    public Iterable<String> GetNames() {
+        return this.providers.keySet();
+    }
+}
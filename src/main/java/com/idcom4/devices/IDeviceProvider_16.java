@@ -0,0 +1,18 @@
+package com.idcom4.devices;
+
+import com.idcom4.Context;
+import com.idcom4.exceptions.IDException;
+
+/*
+    Creates the devices of a kind. The default registry (see DeviceRegistry.FromClassPath) finds them with ServiceLoader:
+    they are listed in META-INF/services/com.idcom4.devices.IDeviceProvider_16, in any jar of the class path,
+    and need a public constructor without parameters.
+ */
+public interface IDeviceProvider_16 {
+
+    // the "device" of the memory map entries
+    String GetName();
+
+    // a device for a region of size addresses
+    IDevice_16 Create(Context context, int size) throws IDException;
+}
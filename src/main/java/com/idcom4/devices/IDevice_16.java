@@ -0,0 +1,33 @@
+package com.idcom4.devices;
+
+import com.idcom4.cpu.components.InterruptController_16;
+
+/*
+    A device mapped in memory (a "mmio" entry of the memory map, see MmioBlock_16): the memory accesses to its region
+    are accesses to its registers, at offsets from 0 to the size of the region.
+    With several cores, each one accesses it from its own thread, devices have to be thread-safe.
+ */
+public interface IDevice_16 {
+
+    short Read(int offset);
+
+    void Write(int offset, short value);
+
+    // not atomic by default, devices meant to be locked on override it
+    default short CompareAndExchange(int offset, short expected, short value) {
+        short found = this.Read(offset);
+        if (found == expected) this.Write(offset, value);
+
+        return found;
+    }
+
+    // called once the machine is built, with the interrupt lines of its first core, for the devices raising interrupts
+    default void Connect(InterruptController_16 interrupts) {}
+
+    /*
+        Called once the core it was connected to is closed, with the same interrupt lines (see CPU_16.Close):
+        the device must stop raising them, and release what it holds for them (host threads, scheduled tasks).
+        A memory may be shared by several machines, the device may have been connected to another one since.
+     */
+    default void Disconnect(InterruptController_16 interrupts) {}
+}
@@ -0,0 +1,137 @@
+package com.idcom4.devices;
+
+import com.idcom4.Context;
+import com.idcom4.cpu.components.InterruptController_16;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+    A programmable interval timer, raising an interrupt line of the first core every period:
+    0x0     MODE        0: stopped, 1: every period cycles of the core, 2: every period milliseconds.
+                        Writing it (re)starts the timer with the current period and line
+    0x1     PERIOD_LOW  the low half of the period, unsigned
+    0x2     PERIOD_HIGH the high half of the period, unsigned
+    0x3     LINE        the interrupt line raised (see InterruptController_16), 0 by default
+    Every register reads as it was written.
+
+    Cycle periods are exact (see InterruptController_16.SetCycleTimer), millisecond ones are raised from a host thread
+    and taken before the next instruction. A period of 0 stops the timer.
+ */
+public class TimerDevice_16 implements IDevice_16 {
+
+    public static class Provider implements IDeviceProvider_16 {
+
+        @Override
+        public String GetName() {
+            return "timer";
+        }
+
+        @Override
+        public IDevice_16 Create(Context context, int size) {
+            return new TimerDevice_16();
+        }
+    }
+
+    private static final int MODE = 0x0;
+    private static final int PERIOD_LOW = 0x1;
+    private static final int PERIOD_HIGH = 0x2;
+    private static final int LINE = 0x3;
+
+    private static final int STOPPED = 0;
+    private static final int CYCLES = 1;
+    private static final int MILLISECONDS = 2;
+
+    // every millisecond timer of every VM shares a daemon thread, created on first use: it only raises lines
+    private static final class Scheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private short mode = STOPPED;
+    private short periodLow = 0;
+    private short periodHigh = 0;
+    private short line = 0;
+
+    // null until connected
+    private InterruptController_16 interrupts;
+    // the running millisecond timer, null if none
+    private ScheduledFuture<?> scheduled;
+    // the line of the running cycle timer, -1 if none
+    private int cycleLine = -1;
+
+    @Override
+    public synchronized void Connect(InterruptController_16 interrupts) {
+        this.Stop();
+        this.interrupts = interrupts;
+        this.Start();
+    }
+
+    // cancels the millisecond timer, which would otherwise keep running on the shared scheduler
+    @Override
+    public synchronized void Disconnect(InterruptController_16 interrupts) {
+        if (this.interrupts != interrupts) return;
+
+        this.Stop();
+        this.interrupts = null;
+    }
+
+    @Override
+    public synchronized short Read(int offset) {
+        return switch (offset) {
+            case MODE -> this.mode;
+            case PERIOD_LOW -> this.periodLow;
+            case PERIOD_HIGH -> this.periodHigh;
+            case LINE -> this.line;
+            default -> 0;
+        };
+    }
+
+    @Override
+    public synchronized void Write(int offset, short value) {
+        switch (offset) {
+            case MODE -> {
+                this.Stop();
+                this.mode = value;
+                this.Start();
+            }
+            case PERIOD_LOW -> this.periodLow = value;
+            case PERIOD_HIGH -> this.periodHigh = value;
+            case LINE -> this.line = value;
+            default -> {}
+        }
+    }
+
+    private void Start() {
+        long period = ((this.periodHigh & 0xFFFFL) << 16) | (this.periodLow & 0xFFFFL);
+        if (this.interrupts == null || period == 0) return;
+
+        InterruptController_16 interrupts = this.interrupts;
+        int line = this.line;
+
+        switch (this.mode) {
+            case CYCLES -> {
+                interrupts.SetCycleTimer(line, period);
+                this.cycleLine = line;
+            }
+            case MILLISECONDS -> this.scheduled = Scheduler.INSTANCE.scheduleAtFixedRate(() -> interrupts.Raise(line), period, period, TimeUnit.MILLISECONDS);
+            default -> {}
+        }
+    }
+
+    private void Stop() {
+        if (this.scheduled != null) {
+            this.scheduled.cancel(false);
+            this.scheduled = null;
+        }
+        if (this.cycleLine >= 0) {
+            this.interrupts.SetCycleTimer(this.cycleLine, 0);
+            this.cycleLine = -1;
+        }
+    }
+}
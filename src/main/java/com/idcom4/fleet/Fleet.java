@@ -0,0 +1,168 @@
+package com.idcom4.fleet;
+
+import com.idcom4.Context;
+import com.idcom4.cpu.CPU_16;
+import com.idcom4.cpu.CPU_16.EExecutionEngines;
+import com.idcom4.cpu.components.IOut_16;
+import com.idcom4.cpu.components.MemoryMapper_16;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Runs any amount of VMs on a fixed pool of threads, instead of a thread per VM like Id16Bit.
+
+    Each VM runs a quantum of instructions (times its shares), then goes back at the end of the queue,
+    so every runnable VM gets its turn and its share of the CPU. Parked and finished VMs hold no thread at all.
+
+    All the threads share a single FIFO queue: a requeued VM runs after every one already waiting.
+    A work-stealing pool would keep running the VMs requeued on each thread's own queue, starving the others,
+    and virtual threads wouldn't add anything, a quantum never blocks.
+
+    Finished VMs are dropped, only counted by finish reason, so a long batch run doesn't keep every VM it ever ran.
+ */
+public class Fleet {
+
+    // the counts of a VM at the time of a Print
+    private record VmSample(FleetVm vm, long instructions, double instructionsPerSecond) {}
+
+    public static final long DEFAULT_QUANTUM = 10_000;
+
+    private final ExecutorService pool;
+    private final long quantum;
+    private final EExecutionEngines engine;
+
+    // the VMs not finished yet
+    private final Set<FleetVm> vms = ConcurrentHashMap.newKeySet();
+    private final AtomicIntegerArray finishedVms = new AtomicIntegerArray(FleetVm.EFinishReasons.values().length);
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final LongAdder instructions = new LongAdder();
+    private final long startTime = System.nanoTime();
+
+    public Fleet() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM, EExecutionEngines.INTERPRETER);
+    }
+
+    public Fleet(int parallelism, long quantum, EExecutionEngines engine) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(Math.max(1, parallelism), Math.max(1, parallelism), 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "fleet-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.quantum = Math.max(1, quantum);
+        this.engine = engine;
+    }
+
+    public FleetVm Submit(Context context, MemoryMapper_16 memoryMapper, IOut_16 output) {
+        return this.Submit(context, memoryMapper, output, 0, 1);
+    }
+
+    // budget: the maximum amount of instructions to execute, 0 for unbounded
+    public FleetVm Submit(Context context, MemoryMapper_16 memoryMapper, IOut_16 output, long budget, int shares) {
+        return this.Start(new FleetVm(this, this.nextId.getAndIncrement(), context, memoryMapper, output, this.engine, budget, shares));
+    }
+
+    // the VM resumes from the snapshot, sharing its memory copy-on-write with every other VM forked from it
+    public FleetVm Fork(Context context, CPU_16.Snapshot snapshot, IOut_16 output, long budget, int shares) {
+        return this.Start(new FleetVm(this, this.nextId.getAndIncrement(), context, snapshot, output, this.engine, budget, shares));
+    }
+
+    public int GetFinishedVms(FleetVm.EFinishReasons reason) {
+        return this.finishedVms.get(reason.ordinal());
+    }
+
+    // waits until every VM submitted so far is finished
+    public void AwaitAll() throws InterruptedException {
+        for (FleetVm vm : this.vms) {
+            vm.Await();
+        }
+    }
+
+    // stops every VM at the end of its current quantum, then the threads
+    public void Close() throws InterruptedException {
+        for (FleetVm vm : this.vms) {
+            vm.Stop();
+        }
+
+        this.AwaitAll();
+        this.pool.shutdown();
+    }
+
+    public long GetInstructions() {
+        return this.instructions.sum();
+    }
+
+    // all the VMs together, since the fleet was created
+    public double GetInstructionsPerSecond() {
+        return this.instructions.sum() * 1e9 / Math.max(1, System.nanoTime() - this.startTime);
+    }
+
+    public void Print(PrintStream out, int top) {
+        // a VM finishing is counted before its state changes, the counters already hold the finished ones
+        int[] states = new int[FleetVm.EStates.values().length];
+        List<FleetVm> vms = new ArrayList<>(this.vms);
+        for (FleetVm vm : vms) {
+            states[vm.GetState().ordinal()]++;
+        }
+
+        int finished = 0;
+        for (FleetVm.EFinishReasons reason : FleetVm.EFinishReasons.values()) {
+            finished += this.GetFinishedVms(reason);
+        }
+
+        int runnable = states[FleetVm.EStates.RUNNABLE.ordinal()];
+        int parked = states[FleetVm.EStates.PARKED.ordinal()];
+        out.printf("Fleet: %d VMs (%d runnable, %d parked, %d finished), %d instructions, %.1f MIPS%n",
+                runnable + parked + finished, runnable, parked, finished,
+                this.GetInstructions(), this.GetInstructionsPerSecond() / 1e6);
+
+        // the busiest of the VMs still running, sorted on counts read once: the pool threads keep incrementing them
+        List<VmSample> samples = new ArrayList<>(vms.size());
+        for (FleetVm vm : vms) {
+            samples.add(new VmSample(vm, vm.GetInstructions(), vm.GetInstructionsPerSecond()));
+        }
+        samples.sort(Comparator.comparingLong(VmSample::instructions).reversed());
+
+        for (VmSample sample : samples.subList(0, Math.min(top, samples.size()))) {
+            FleetVm vm = sample.vm();
+            String state = vm.GetState() == FleetVm.EStates.FINISHED ? vm.GetFinishReason().name() : vm.GetState().name();
+            out.printf("  #%-6d %-16s %14d instructions  %10.3f MIPS%n", vm.GetId(), state, sample.instructions(), sample.instructionsPerSecond() / 1e6);
+        }
+    }
+
+    private FleetVm Start(FleetVm vm) {
+        this.vms.add(vm);
+        this.Schedule(vm);
+
+        return vm;
+    }
+
+    long GetQuantum() {
+        return this.quantum;
+    }
+
+    void Schedule(FleetVm vm) {
+        this.pool.execute(vm::RunQuantum);
+    }
+
+    void Account(long instructions) {
+        this.instructions.add(instructions);
+    }
+
+    void OnFinished(FleetVm vm, FleetVm.EFinishReasons reason) {
+        this.vms.remove(vm);
+        this.finishedVms.incrementAndGet(reason.ordinal());
+    }
+}
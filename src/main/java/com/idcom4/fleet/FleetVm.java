@@ -0,0 +1,196 @@
+package com.idcom4.fleet;
+
+import com.idcom4.Context;
+import com.idcom4.cpu.CPU_16;
+import com.idcom4.cpu.CPU_16.EExecutionEngines;
+import com.idcom4.cpu.CPU_16.EStopReasons;
+import com.idcom4.cpu.components.InterruptController_16;
+import com.idcom4.cpu.components.IOut_16;
+import com.idcom4.cpu.components.MemoryMapper_16;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+    A single core VM run by a Fleet, a quantum at a time, its input being fed by the host.
+
+    Between two quanta, the VM is:
+    - RUNNABLE: queued on the fleet, or running a quantum
+    - PARKED: holding no thread, until Input, Interrupt or Wake is called. A VM parks after a pause interrupt,
+      a wait for an interrupt, or a quantum whose input reads all found nothing (the guest is waiting for input).
+      Input raises InterruptController_16.INPUT_LINE, for guests waiting with it unmasked
+    - FINISHED: see EFinishReasons
+ */
+public class FleetVm {
+
+    public enum EStates {
+        RUNNABLE,
+        PARKED,
+        FINISHED
+    }
+
+    public enum EFinishReasons {
+        HALT,               // an end of execution interrupt was raised
+        BUDGET_EXHAUSTED,   // executed its instruction budget
+        STOPPED             // stopped by the host
+    }
+
+    private final int id;
+    private final Fleet fleet;
+    private final CPU_16 cpu;
+
+    // relative amount of instructions run per quantum, compared to the other VMs
+    private final int shares;
+    // maximum amount of instructions to execute, 0 for unbounded
+    private final long budget;
+
+    private final ConcurrentLinkedQueue<Character> input = new ConcurrentLinkedQueue<>();
+    // input reads of the current quantum, only touched by the thread running it
+    private int inputReads;
+    private int emptyInputReads;
+
+    private final AtomicReference<EStates> state = new AtomicReference<>(EStates.RUNNABLE);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean stopRequested = false;
+    private volatile EFinishReasons finishReason = null;
+
+    // written by the thread running the current quantum only
+    private volatile long instructions = 0;
+    private final long startTime = System.nanoTime();
+    private volatile long endTime = 0;
+
+    FleetVm(Fleet fleet, int id, Context context, MemoryMapper_16 memoryMapper, IOut_16 output, EExecutionEngines engine, long budget, int shares) {
+        this.fleet = fleet;
+        this.id = id;
+        this.budget = Math.max(0, budget);
+        this.shares = Math.max(1, shares);
+
+        this.cpu = new CPU_16(context, this::ReadInput, output, memoryMapper);
+        this.cpu.SetExecutionEngine(engine);
+        this.cpu.GetInterruptController().SetWakeListener(this::Wake);
+    }
+
+    FleetVm(Fleet fleet, int id, Context context, CPU_16.Snapshot snapshot, IOut_16 output, EExecutionEngines engine, long budget, int shares) {
+        this.fleet = fleet;
+        this.id = id;
+        this.budget = Math.max(0, budget);
+        this.shares = Math.max(1, shares);
+
+        this.cpu = new CPU_16(context, this::ReadInput, output, snapshot);
+        this.cpu.SetExecutionEngine(engine);
+        this.cpu.GetInterruptController().SetWakeListener(this::Wake);
+    }
+
+    public int GetId() {
+        return this.id;
+    }
+
+    public EStates GetState() {
+        return this.state.get();
+    }
+
+    // null until finished
+    public EFinishReasons GetFinishReason() {
+        return this.finishReason;
+    }
+
+    public long GetInstructions() {
+        return this.instructions;
+    }
+
+    // since the VM was submitted, until it finished
+    public double GetInstructionsPerSecond() {
+        long endTime = this.endTime != 0 ? this.endTime : System.nanoTime();
+        return this.instructions * 1e9 / Math.max(1, endTime - this.startTime);
+    }
+
+    public void Input(char value) {
+        this.input.add(value);
+        this.Interrupt(InterruptController_16.INPUT_LINE);
+    }
+
+    public void Input(String text) {
+        for (char value : text.toCharArray()) {
+            this.input.add(value);
+        }
+        this.Interrupt(InterruptController_16.INPUT_LINE);
+    }
+
+    // raises an interrupt line of the VM, waking it if parked
+    public void Interrupt(int line) {
+        this.cpu.GetInterruptController().Raise(line);
+    }
+
+    // resumes a parked VM, does nothing otherwise
+    public void Wake() {
+        if (this.state.compareAndSet(EStates.PARKED, EStates.RUNNABLE)) this.fleet.Schedule(this);
+    }
+
+    // the VM finishes at the end of its current quantum
+    public void Stop() {
+        this.stopRequested = true;
+        this.Wake();
+    }
+
+    public void Await() throws InterruptedException {
+        this.finished.await();
+    }
+
+    void RunQuantum() {
+        if (this.stopRequested) {
+            this.Finish(EFinishReasons.STOPPED);
+            return;
+        }
+
+        long quantum = this.fleet.GetQuantum() * this.shares;
+        if (this.budget > 0) quantum = Math.min(quantum, this.budget - this.instructions);
+
+        this.inputReads = 0;
+        this.emptyInputReads = 0;
+
+        CPU_16.RunResult result = this.cpu.Run(quantum);
+
+        this.instructions += result.cycles();
+        this.fleet.Account(result.cycles());
+
+        if (result.reason() == EStopReasons.HALT)
+            this.Finish(EFinishReasons.HALT);
+        else if (this.budget > 0 && this.instructions >= this.budget)
+            this.Finish(EFinishReasons.BUDGET_EXHAUSTED);
+        else if (result.reason() == EStopReasons.PAUSE || result.reason() == EStopReasons.WAIT
+                || (this.emptyInputReads > 0 && this.emptyInputReads == this.inputReads))
+            this.Park();
+        else
+            this.fleet.Schedule(this);
+    }
+
+    private void Park() {
+        this.state.set(EStates.PARKED);
+
+        // input, an interrupt or a stop may have come in while parking, don't wait for the next one
+        if (!this.input.isEmpty() || this.cpu.GetInterruptController().HasPending() || this.stopRequested) this.Wake();
+    }
+
+    private void Finish(EFinishReasons reason) {
+        this.finishReason = reason;
+        this.endTime = System.nanoTime();
+        // the memory may be shared with other VMs, which shouldn't keep invalidating this one's caches
+        this.cpu.Close();
+        this.fleet.OnFinished(this, reason);
+        this.state.set(EStates.FINISHED);
+        this.finished.countDown();
+    }
+
+    private short ReadInput() {
+        this.inputReads++;
+
+        Character value = this.input.poll();
+        if (value == null) {
+            this.emptyInputReads++;
+            return 0;
+        }
+
+        return (short) value.charValue();
+    }
+}
@@ -1,11 +1,22 @@
 package com.idcom4.infra.options;
 
+import com.idcom4.cpu.CPU_16.EExecutionEngines;
+import com.idcom4.cpu.IProfiler_16.EProfilerModes;
+
 public class Options {
 
     public enum EOptions {
         MMAP("--mmap", "-m"),
         DELAY("--delay", "-d"),
+        CLOCK_RATE("--clock-hz", "-c"),
         LOG("--logs", "-l"),
+        TRACE("--trace", "-t"),
+        OPCODE_STATS("--opcode-stats", "-s"),
+        PROFILE("--profile", "-p"),
+        PROFILE_OUTPUT("--profile-out", "-o"),
+        ENGINE("--engine", "-e"),
+        CORES("--cores", "-n"),
+        CHECKPOINT("--checkpoint-ms", "-k"),
         HELP("--help", "-h");
 
         public final String name;
@@ -34,11 +45,51 @@ public class Options {
                 "The amount of delay between instructions, in milliseconds",
                 Options::SetDelayInMS
         ),
+        new SupportedOption(
+                EOptions.CLOCK_RATE.name, EOptions.CLOCK_RATE.shortName,
+                "The clock rate, in instructions per second (overrides the delay)",
+                Options::SetClockRate
+        ),
         new SupportedOption(
                 EOptions.LOG.name, EOptions.LOG.shortName,
                 "Whether to log the execution state or not",
                 Options::SetLog
         ),
+        new SupportedOption(
+                EOptions.TRACE.name, EOptions.TRACE.shortName,
+                "The path to a binary file to record the execution trace into",
+                Options::SetTraceFile
+        ),
+        new SupportedOption(
+                EOptions.OPCODE_STATS.name, EOptions.OPCODE_STATS.shortName,
+                "Whether to print the opcode and opcode pair frequencies on exit or not",
+                Options::SetOpcodeStats
+        ),
+        new SupportedOption(
+                EOptions.PROFILE.name, EOptions.PROFILE.shortName,
+                "The guest program profiler, \"exact\" or \"sampling\", reports are written on exit",
+                Options::SetProfilerMode
+        ),
+        new SupportedOption(
+                EOptions.PROFILE_OUTPUT.name, EOptions.PROFILE_OUTPUT.shortName,
+                "The path prefix of the profiler reports, \"profile\" by default (profile.collapsed, profile.csv)",
+                Options::SetProfileOutput
+        ),
+        new SupportedOption(
+                EOptions.ENGINE.name, EOptions.ENGINE.shortName,
+                "The execution engine, \"interpreter\" (default) or \"jit\"",
+                Options::SetEngine
+        ),
+        new SupportedOption(
+                EOptions.CORES.name, EOptions.CORES.shortName,
+                "The amount of cores sharing the memory, 1 by default",
+                Options::SetCores
+        ),
+        new SupportedOption(
+                EOptions.CHECKPOINT.name, EOptions.CHECKPOINT.shortName,
+                "The period of the background checkpoints of the persistent memory, in milliseconds (0, by default, only saves on exit)",
+                Options::SetCheckpointPeriod
+        ),
         new SupportedOption(
                 EOptions.HELP.name, EOptions.HELP.shortName,
                 "Prints available options.",
@@ -50,7 +101,15 @@ public class Options {
 
     private String mmapFile = null;
     private int delayInMS = 0;
+    private double clockRate = 0;
     private boolean log = false;
+    private String traceFile = null;
+    private boolean opcodeStats = false;
+    private EProfilerModes profilerMode = null;
+    private String profileOutput = "profile";
+    private EExecutionEngines engine = EExecutionEngines.INTERPRETER;
+    private int cores = 1;
+    private long checkpointPeriodInMS = 0;
     private boolean help = false;
 
     public Options() {}
@@ -67,10 +126,54 @@ public class Options {
         this.delayInMS = Math.max(0, Integer.parseInt(value));
     }
 
+    private void SetClockRate(String value) {
+        this.clockRate = Math.max(0, Double.parseDouble(value));
+    }
+
     private void SetLog(String _unused) {
         this.log = true;
     }
 
+    private void SetTraceFile(String traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    private void SetOpcodeStats(String _unused) {
+        this.opcodeStats = true;
+    }
+
+    private void SetProfilerMode(String value) {
+        EProfilerModes mode = EProfilerModes.fromName(value);
+        if (mode == null) {
+            System.err.println("[ERR] Unknown profiler: " + value);
+            return;
+        }
+
+        this.profilerMode = mode;
+    }
+
+    private void SetProfileOutput(String profileOutput) {
+        this.profileOutput = profileOutput;
+    }
+
+    private void SetEngine(String value) {
+        EExecutionEngines engine = EExecutionEngines.fromName(value);
+        if (engine == null) {
+            System.err.println("[ERR] Unknown engine: " + value);
+            return;
+        }
+
+        this.engine = engine;
+    }
+
+    private void SetCores(String value) {
+        this.cores = Math.max(1, Integer.parseInt(value));
+    }
+
+    private void SetCheckpointPeriod(String value) {
+        this.checkpointPeriodInMS = Math.max(0, Long.parseLong(value));
+    }
+
     private void SetHelp(String _unused) {
         this.help = true;
     }
@@ -78,9 +181,33 @@ public class Options {
     public int GetDelay() {
         return this.delayInMS;
     }
+    public double GetClockRate() {
+        return this.clockRate;
+    }
     public boolean GetLog() {
         return this.log;
     }
+    public String GetTraceFile() {
+        return this.traceFile;
+    }
+    public boolean GetOpcodeStats() {
+        return this.opcodeStats;
+    }
+    public EProfilerModes GetProfilerMode() {
+        return this.profilerMode;
+    }
+    public String GetProfileOutput() {
+        return this.profileOutput;
+    }
+    public EExecutionEngines GetEngine() {
+        return this.engine;
+    }
+    public int GetCores() {
+        return this.cores;
+    }
+    public long GetCheckpointPeriod() {
+        return this.checkpointPeriodInMS;
+    }
     public boolean GetHelp() {
         return this.help;
     }
@@ -0,0 +1,128 @@
+package com.idcom4.mem_manager;
+
+import com.idcom4.Context;
+import com.idcom4.Id16Bit;
+import com.idcom4.cpu.components.MemoryBlock_16;
+import com.idcom4.cpu.components.MemoryBlock_16.DirtyPage;
+import com.idcom4.exceptions.IDException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Saves the persistent memory blocks incrementally: only the pages written since the previous checkpoint.
+
+    The dirty pages are copied while the cores are stopped between two instructions (see Id16Bit.RunAtSafepoint),
+    so a checkpoint is always a consistent state of the memory, then written while the cores run again:
+    every block in parallel, each one through a journal so a crash never leaves a state file half written (see StateJournal).
+
+    Mapped blocks are their state file: a checkpoint only flushes them, which can't be atomic.
+ */
+public class Checkpointer {
+
+    record Target(MemoryBlock_16 block, String stateFile, boolean mapped) {}
+
+    private record Pending(Target target, List<DirtyPage> pages) {}
+
+    private final Context context;
+    private final List<Target> targets;
+
+    // null until started
+    private ScheduledExecutorService scheduler;
+
+    Checkpointer(Context context, List<Target> targets) {
+        this.context = context;
+        this.targets = targets;
+
+        for (Target target : targets) {
+            if (!target.mapped()) target.block().TrackDirtyPages();
+        }
+    }
+
+    // for a memory nothing runs on
+    public synchronized void Checkpoint() throws IDException {
+        this.Write(this.Collect());
+    }
+
+    // at the next instruction boundary of every core of the computer
+    public synchronized void Checkpoint(Id16Bit computer) throws IDException {
+        List<Pending> pending = new ArrayList<>();
+
+        try {
+            computer.RunAtSafepoint(() -> pending.addAll(this.Collect()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IDException("Checkpoint interrupted", e);
+        }
+
+        this.Write(pending);
+    }
+
+    // checkpoints the computer every period, from a background thread
+    public synchronized void Start(Id16Bit computer, long periodInMS) {
+        if (this.scheduler != null) return;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                this.Checkpoint(computer);
+            } catch (IDException e) {
+                this.context.logger.errln("[ERR] Checkpoint failed: " + e.getMessage());
+            }
+        }, periodInMS, periodInMS, TimeUnit.MILLISECONDS);
+    }
+
+    // waits for the running checkpoint, if any
+    public void Stop() throws InterruptedException {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = this.scheduler;
+            this.scheduler = null;
+        }
+
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    private List<Pending> Collect() {
+        List<Pending> pending = new ArrayList<>();
+        for (Target target : this.targets) {
+            pending.add(new Pending(target, target.mapped() ? List.of() : target.block().TakeDirtyPages()));
+        }
+
+        return pending;
+    }
+
+    private void Write(List<Pending> pending) throws IDException {
+        try {
+            pending.parallelStream().forEach(Checkpointer::Write);
+        } catch (UncheckedIOException e) {
+            throw new IDException("Couldn't checkpoint the memory", e.getCause());
+        }
+    }
+
+    private static void Write(Pending pending) {
+        Target target = pending.target();
+        if (target.mapped()) {
+            target.block().Force();
+            return;
+        }
+
+        try {
+            StateJournal.Commit(target.stateFile(), target.block().GetSize(), pending.pages());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
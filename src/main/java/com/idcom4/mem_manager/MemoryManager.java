@@ -1,30 +1,76 @@
 package com.idcom4.mem_manager;
 
 import com.idcom4.Context;
-import com.idcom4.cpu.components.MemoryBlock_16;
-import com.idcom4.cpu.components.MemoryMapper_16;
+import com.idcom4.cpu.components.*;
+import com.idcom4.cpu.components.IMemoryStorage_16.EBackends;
+import com.idcom4.devices.IDeviceProvider_16;
 import com.idcom4.exceptions.IDException;
 import com.idcom4.utils.FileUtils;
 import com.idcom4.utils.Json;
-import com.idcom4.utils.logger.ILogger;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MemoryManager {
 
-    record MemBlockData(String name, int size, boolean readonly, boolean persistent, String stateFile) {}
+    enum EBlockTypes {
+        MEMORY("memory"),   // a memory block of the memory mapper
+        MMIO("mmio"),       // a region of the memory mapper whose accesses go to a device, see Context.devices
+        STACK("stack");     // the size of the stack of each core, at most Stack_16.MAX_SIZE
 
-    public static MemoryMapper_16 CreateMemoryMapper(int size) throws IDException {
+        public final String name;
+
+        EBlockTypes(String name) {
+            this.name = name;
+        }
+
+        // null if unknown
+        public static EBlockTypes fromName(String name) {
+            for (EBlockTypes type : EBlockTypes.values()) {
+                if (type.name.equals(name)) return type;
+            }
+
+            return null;
+        }
+    }
+
+    // type: see EBlockTypes, a memory block if not set
+    // backend: see IMemoryStorage_16.EBackends, the heap if not set
+    // device: the name of the device provider of a mmio block
+    record MemBlockData(String name, String type, int size, boolean readonly, boolean persistent, String stateFile, String backend, String device) {
+
+        EBlockTypes GetType() throws IDException {
+            if (type == null) return EBlockTypes.MEMORY;
+
+            EBlockTypes value = EBlockTypes.fromName(type);
+            if (value == null) throw new IDException("Unknown type \"" + type + "\" for memory block " + name);
+
+            return value;
+        }
+
+        EBackends GetBackend() throws IDException {
+            if (backend == null) return EBackends.HEAP;
+
+            EBackends value = EBackends.fromName(backend);
+            if (value == null) throw new IDException("Unknown backend \"" + backend + "\" for memory block " + name);
+
+            return value;
+        }
+    }
+
+    public static MemoryMapper_16 CreateMemoryMapper(Context context, int size) throws IDException {
         try {
-            return new MemoryMapper_16(new MemoryBlock_16[] { new MemoryBlock_16("_default", false, size) });
+            return new MemoryMapper_16(context, new MemoryBlock_16[] { new MemoryBlock_16(context, "_default", false, size) });
         } catch (Exception e) {
             throw new IDException("Couldn't create the memory mapper", e);
         }
     }
 
-    public static MemoryMapper_16 CreateMemoryMapper(String memMapFileName) throws IDException {
+    public static MemoryMapper_16 CreateMemoryMapper(Context context, String memMapFileName) throws IDException {
         try {
-            MemBlockData[] memBlocksData = GetMemBlockData(memMapFileName);
+            MemBlockData[] memBlocksData = GetMemoryBlocksData(memMapFileName);
             if (memBlocksData.length == 0) {
                 throw new IDException("Couldn't create the memory mapper, no memory blocks found");
             }
@@ -32,55 +78,117 @@ public class MemoryManager {
             MemoryBlock_16[] memBlocks = new MemoryBlock_16[memBlocksData.length];
 
             for (int i = 0; i < memBlocks.length; i++) {
-                memBlocks[i] = CreateMemoryBlock(memBlocksData[i]);
+                memBlocks[i] = CreateMemoryBlock(context, memBlocksData[i]);
             }
 
-            return new MemoryMapper_16(memBlocks);
+            return new MemoryMapper_16(context, memBlocks);
 
         } catch (Exception e) {
             throw new IDException("Couldn't create the memory mapper", e);
         }
     }
 
-    private static MemoryBlock_16 CreateMemoryBlock(MemBlockData blockData) {
+    private static MemoryBlock_16 CreateMemoryBlock(Context context, MemBlockData blockData) throws IDException, IOException {
+        if (blockData.GetType() == EBlockTypes.MMIO) return CreateMmioBlock(context, blockData);
+
+        EBackends backend = blockData.GetBackend();
+
+        if (backend == EBackends.MAPPED) {
+            if (blockData.stateFile == null) throw new IDException("No state file provided for mapped memory block " + blockData.name);
+            StateJournal.Recover(blockData.stateFile);
+
+            // the file is created if missing, and only written to if persistent
+            FileChannel.MapMode mode = blockData.readonly ? FileChannel.MapMode.READ_ONLY
+                    : blockData.persistent ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.PRIVATE;
+
+            return new MemoryBlock_16(context, blockData.name, blockData.readonly, new MappedStorage_16(blockData.stateFile, blockData.size, mode));
+        }
+
         if (blockData.stateFile == null) {
             if (blockData.persistent) {
-                Context.INSTANCE.logger.errln("[ERR] No state file provided for memory block " + blockData.name + ", setting it as non persistent");
+                context.logger.errln("[ERR] No state file provided for memory block " + blockData.name + ", setting it as non persistent");
             }
 
-            return new MemoryBlock_16(blockData.name, blockData.readonly, blockData.size);
+            if (backend == EBackends.OFF_HEAP)
+                return new MemoryBlock_16(context, blockData.name, blockData.readonly, new OffHeapStorage_16(blockData.size));
+            if (backend == EBackends.SPARSE)
+                return new MemoryBlock_16(context, blockData.name, blockData.readonly, new SparseStorage_16(blockData.size));
+
+            return new MemoryBlock_16(context, blockData.name, blockData.readonly, blockData.size);
         }
         else {
+            if (backend == EBackends.SPARSE) throw new IDException("A sparse memory block starts empty, no state file can be provided for " + blockData.name);
+
+            // finish the checkpoint a crash interrupted, if any
+            StateJournal.Recover(blockData.stateFile);
             short[] initialState = FileUtils.ReadFileShorts(blockData.stateFile);
 
+            if (backend == EBackends.OFF_HEAP)
+                return new MemoryBlock_16(context, blockData.name, blockData.readonly, new OffHeapStorage_16(initialState));
 
-            return new MemoryBlock_16(blockData.name, blockData.readonly, initialState);
+            return new MemoryBlock_16(context, blockData.name, blockData.readonly, initialState);
         }
     }
 
-    public static void SaveMemoryMapper(MemoryMapper_16 memMapper, String memMapFileName) throws IDException {
-        try {
-            MemBlockData[] memBlocksData = GetMemBlockData(memMapFileName);
+    private static MemoryBlock_16 CreateMmioBlock(Context context, MemBlockData blockData) throws IDException {
+        if (blockData.device == null) throw new IDException("No device provided for mmio memory block " + blockData.name);
 
-            for (MemBlockData memBlockData : memBlocksData) {
-                if (memBlockData.persistent && memBlockData.stateFile != null) {
-                    MemoryBlock_16 memBlock =
-                            Arrays.stream(memMapper.GetMemoryBlocks())
-                                    .filter((block) -> block.GetName().equals(memBlockData.name))
-                                    .findFirst().orElse(null);
+        IDeviceProvider_16 provider = context.devices.Get(blockData.device);
+        if (provider == null) {
+            throw new IDException("Unknown device \"" + blockData.device + "\" for memory block " + blockData.name + ", available: " + String.join(", ", context.devices.GetNames()));
+        }
 
-                    if (memBlock == null) continue;
+        return new MmioBlock_16(context, blockData.name, blockData.size, provider.Create(context, blockData.size));
+    }
+
+    // the blocks of the mapper are the ones of the mmap file, in the same order (see CreateMemoryMapper)
+    public static Checkpointer CreateCheckpointer(Context context, MemoryMapper_16 memMapper, String memMapFileName) throws IDException {
+        MemBlockData[] memBlocksData = GetMemoryBlocksData(memMapFileName);
+        MemoryBlock_16[] memBlocks = memMapper.GetMemoryBlocks();
+        if (memBlocks.length != memBlocksData.length) {
+            throw new IDException("Couldn't create the checkpointer, the memory mapper doesn't match " + memMapFileName);
+        }
 
-                    SaveMemoryBlock(memBlock, memBlockData.stateFile);
-                }
+        List<Checkpointer.Target> targets = new ArrayList<>();
+        for (int i = 0; i < memBlocks.length; i++) {
+            MemBlockData memBlockData = memBlocksData[i];
+            if (memBlockData.GetType() != EBlockTypes.MEMORY || !memBlockData.persistent || memBlockData.stateFile == null) continue;
+
+            // a mapped block is its state file
+            targets.add(new Checkpointer.Target(memBlocks[i], memBlockData.stateFile, memBlockData.GetBackend() == EBackends.MAPPED));
+        }
+
+        return new Checkpointer(context, targets);
+    }
+
+    // the size of the stack entry of the mmap file if any, Stack_16.MAX_SIZE otherwise
+    public static int GetStackSize(String memMapFileName) throws IDException {
+        int stackSize = Stack_16.MAX_SIZE;
+        boolean found = false;
+
+        for (MemBlockData memBlockData : GetMemBlockData(memMapFileName)) {
+            if (memBlockData.GetType() != EBlockTypes.STACK) continue;
+
+            if (found) throw new IDException("Several stacks defined in " + memMapFileName);
+            if (memBlockData.size <= 0 || memBlockData.size > Stack_16.MAX_SIZE) {
+                throw new IDException("Invalid stack size " + memBlockData.size + ", it must be between 1 and " + Stack_16.MAX_SIZE);
             }
-        } catch (Exception e) {
-            throw new IDException("Couldn't save the memory mapper", e);
+
+            stackSize = memBlockData.size;
+            found = true;
         }
+
+        return stackSize;
     }
 
-    private static void SaveMemoryBlock(MemoryBlock_16 memBlock, String stateFile) throws IDException {
-        FileUtils.WriteFileShorts(stateFile, memBlock.GetContent());
+    private static MemBlockData[] GetMemoryBlocksData(String memMapFileName) throws IDException {
+        List<MemBlockData> memBlocksData = new ArrayList<>();
+        for (MemBlockData memBlockData : GetMemBlockData(memMapFileName)) {
+            if (memBlockData.GetType() != EBlockTypes.STACK) memBlocksData.add(memBlockData);
+        }
+
+        return memBlocksData.toArray(MemBlockData[]::new);
     }
 
     private static MemBlockData[] GetMemBlockData(String memMapFileName) throws IDException {
@@ -0,0 +1,147 @@
+package com.idcom4.mem_manager;
+
+import com.idcom4.cpu.components.HeapStorage_16;
+import com.idcom4.cpu.components.MemoryBlock_16.DirtyPage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/*
+    Writes pages into a state file without ever leaving it half written:
+    1. the pages are written to a journal next to the state file, ending with a checksum, and synced
+    2. the pages are written in place into the state file, and synced
+    3. the journal is deleted
+
+    After a crash, a complete journal (its checksum matches) is applied again before the state file is read,
+    and an incomplete one is dropped: the state file wasn't touched yet.
+    The directory is synced once the journal is created and once it's deleted, for its entry to survive a power loss
+    as long as the state file may be torn.
+
+    Journal: MAGIC, the values count of the state file, then for each page its index, its length and its values,
+    then END and the CRC32 of everything before it.
+ */
+final class StateJournal {
+
+    private static final int MAGIC = 0x49444A31;
+    private static final int END = -1;
+    private static final int HEADER_SIZE = 5;
+    private static final byte BYTE_ENCODING = 2;
+
+    private StateJournal() {}
+
+    static void Commit(String stateFile, int size, List<DirtyPage> pages) throws IOException {
+        if (pages.isEmpty()) return;
+
+        Path journal = JournalPath(stateFile);
+        Write(journal, size, pages);
+
+        Apply(stateFile, size, pages);
+        Delete(journal);
+    }
+
+    // the journal of an interrupted commit, before its pages are applied (step 1)
+    static void Write(Path journal, int size, List<DirtyPage> pages) throws IOException {
+        try (FileOutputStream file = new FileOutputStream(journal.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+
+            out.writeInt(MAGIC);
+            out.writeInt(size);
+            for (DirtyPage page : pages) {
+                out.writeInt(page.index());
+                out.writeInt(page.content().length);
+                for (short value : page.content()) {
+                    out.writeShort(value);
+                }
+            }
+            out.writeInt(END);
+            out.flush();
+
+            new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+            file.getFD().sync();
+        }
+
+        SyncDirectory(journal);
+    }
+
+    // applies the journal left by an interrupted commit, if any
+    static void Recover(String stateFile) throws IOException {
+        Path journal = JournalPath(stateFile);
+        if (!Files.exists(journal)) return;
+
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(journal.toFile())), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            List<DirtyPage> pages = new ArrayList<>();
+
+            boolean valid = in.readInt() == MAGIC;
+            int size = in.readInt();
+            valid = valid && size >= 0;
+
+            int index;
+            while (valid && (index = in.readInt()) != END) {
+                int length = in.readInt();
+                valid = index >= 0 && length >= 0 && length <= HeapStorage_16.PAGE_SIZE;
+                if (!valid) break;
+
+                short[] content = new short[length];
+                for (int i = 0; i < content.length; i++) {
+                    content[i] = in.readShort();
+                }
+                pages.add(new DirtyPage(index, content));
+            }
+
+            long checksum = checked.getChecksum().getValue();
+            if (valid && new DataInputStream(checked).readLong() == checksum) Apply(stateFile, size, pages);
+        } catch (EOFException e) {
+            // the crash happened while writing the journal, the state file is untouched
+        }
+
+        Delete(journal);
+    }
+
+    private static void Apply(String stateFile, int size, List<DirtyPage> pages) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(stateFile, "rw")) {
+            long length = HEADER_SIZE + size * 2L;
+            if (file.length() != length) {
+                file.setLength(length);
+                file.writeByte(BYTE_ENCODING);
+                file.writeInt(size);
+            }
+
+            for (DirtyPage page : pages) {
+                ByteBuffer bytes = ByteBuffer.allocate(page.content().length * 2);
+                bytes.asShortBuffer().put(page.content());
+
+                file.seek(HEADER_SIZE + (long) page.index() * HeapStorage_16.PAGE_SIZE * 2);
+                file.write(bytes.array());
+            }
+
+            file.getFD().sync();
+        }
+    }
+
+    static Path JournalPath(String stateFile) {
+        return Path.of(stateFile + ".journal");
+    }
+
+    private static void Delete(Path journal) throws IOException {
+        Files.delete(journal);
+        SyncDirectory(journal);
+    }
+
+    // persists the creation or the deletion of the file, a sync of the file alone doesn't
+    private static void SyncDirectory(Path file) throws IOException {
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+}
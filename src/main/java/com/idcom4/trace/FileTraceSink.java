@@ -0,0 +1,51 @@
+package com.idcom4.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Writes the raw records to a binary trace file:
+    | MAGIC (8 bytes) | RECORD (24 bytes) | RECORD (24 bytes) | ...
+    See TraceDecoder to turn it back into logs.
+ */
+public class FileTraceSink implements ITraceSink {
+
+    static final long MAGIC = 0x4944313654524331L; // "ID16TRC1"
+
+    static final int BUFFER_SIZE = 2730 * TraceRecords.RECORD_BYTES; // ~64KB
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public FileTraceSink(String fileName) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer.putLong(MAGIC);
+    }
+
+    @Override
+    public void Write(long instruction, long operands, long status) throws IOException {
+        if (this.buffer.remaining() < TraceRecords.RECORD_BYTES) this.Flush();
+
+        this.buffer.putLong(instruction);
+        this.buffer.putLong(operands);
+        this.buffer.putLong(status);
+    }
+
+    @Override
+    public void Flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    @Override
+    public void Close() throws IOException {
+        this.Flush();
+        this.channel.close();
+    }
+}
@@ -0,0 +1,9 @@
+package com.idcom4.trace;
+
+import java.io.IOException;
+
+public interface ITraceSink {
+    void Write(long instruction, long operands, long status) throws IOException;
+    void Flush() throws IOException;
+    void Close() throws IOException;
+}
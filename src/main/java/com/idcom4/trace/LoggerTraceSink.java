@@ -0,0 +1,42 @@
+package com.idcom4.trace;
+
+import com.idcom4.utils.logger.ILogger;
+
+// prints the records in the human-readable format of the logs
+public class LoggerTraceSink implements ITraceSink {
+
+    private final ILogger logger;
+
+    public LoggerTraceSink(ILogger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void Write(long instruction, long operands, long status) {
+        int ptr = (short) TraceRecords.ExecutionPointer(instruction);
+        this.logger.logln("EXPTR: %d (%x) | [opcode]: %04x\t[0]: %04x\t[1]: %04x", ptr, ptr, TraceRecords.Opcode(instruction), TraceRecords.Param0(instruction), TraceRecords.Param1(instruction));
+
+        int value0 = TraceRecords.Value0(operands);
+        int value1 = TraceRecords.Value1(operands);
+        int result = TraceRecords.Result(operands);
+
+        switch (TraceRecords.Kind(status)) {
+            case MATH -> this.logger.log(">\tMATH: %d (%04x) and %d (%04x) = %d (%04x)\n", value0, value0, value1, value1, result, result);
+            case COMPARE -> this.logger.log(">\tCMP: %d (%04x) and %d (%04x) = %b\n", value0, value0, value1, value1, result != 0);
+            case MOVE -> this.logger.log(">\tMOVE: %d (%04x) to %d (%04x)\n", value0, value0, value1, value1);
+            case NONE -> {}
+        }
+
+        this.logger.logln("");
+    }
+
+    @Override
+    public void Flush() {
+        System.out.flush();
+    }
+
+    @Override
+    public void Close() {
+        this.Flush();
+    }
+}
@@ -0,0 +1,71 @@
+package com.idcom4.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Single producer / single consumer ring of trace records, preallocated once.
+
+    The CPU thread puts records, a drainer thread takes them out.
+    Nothing is allocated per record, and nothing is ever dropped:
+    when the ring is full the producer waits for the drainer to catch up.
+ */
+public class TraceBuffer {
+
+    public interface IRecordConsumer {
+        void Accept(long instruction, long operands, long status);
+    }
+
+    private static final long FULL_WAIT_NANOS = 10_000;
+
+    private final long[] records;
+    private final int mask;
+
+    // sequence numbers of the next record to put and to take
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // last tail seen by the producer, to avoid reading the consumer's counter on every put
+    private long cachedTail = 0;
+
+    // capacity in records, rounded up to a power of 2
+    public TraceBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1) << 1);
+
+        this.records = new long[size * TraceRecords.RECORD_LONGS];
+        this.mask = size - 1;
+    }
+
+    public void Put(long instruction, long operands, long status) {
+        long head = this.head.getPlain();
+
+        while (head - this.cachedTail > this.mask) {
+            this.cachedTail = this.tail.getAcquire();
+            if (head - this.cachedTail > this.mask) LockSupport.parkNanos(FULL_WAIT_NANOS);
+        }
+
+        int index = (int) (head & this.mask) * TraceRecords.RECORD_LONGS;
+        this.records[index] = instruction;
+        this.records[index + 1] = operands;
+        this.records[index + 2] = status;
+
+        this.head.setRelease(head + 1);
+    }
+
+    // hands every available record to the consumer, returns how many there were
+    public int Drain(IRecordConsumer consumer) {
+        long tail = this.tail.getPlain();
+        long head = this.head.getAcquire();
+
+        for (long sequence = tail; sequence < head; sequence++) {
+            int index = (int) (sequence & this.mask) * TraceRecords.RECORD_LONGS;
+            consumer.Accept(this.records[index], this.records[index + 1], this.records[index + 2]);
+        }
+
+        this.tail.setRelease(head);
+        return (int) (head - tail);
+    }
+
+    public int GetCapacity() {
+        return this.mask + 1;
+    }
+}
@@ -0,0 +1,54 @@
+package com.idcom4.trace;
+
+import com.idcom4.utils.logger.ConsoleLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Turns a binary trace file (see FileTraceSink) back into the --logs output:
+
+    java -cp sh_out com.idcom4.trace.TraceDecoder <trace-file>
+ */
+public class TraceDecoder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: TraceDecoder <trace-file>");
+            return;
+        }
+
+        ITraceSink sink = new LoggerTraceSink(new ConsoleLogger());
+        Decode(args[0], sink);
+        sink.Close();
+    }
+
+    public static void Decode(String fileName, ITraceSink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(FileTraceSink.BUFFER_SIZE).flip();
+
+            if (!Fill(channel, buffer, Long.BYTES) || buffer.getLong() != FileTraceSink.MAGIC)
+                throw new IOException("Not a trace file: " + fileName);
+
+            while (true) {
+                if (buffer.remaining() < TraceRecords.RECORD_BYTES && !Fill(channel, buffer, TraceRecords.RECORD_BYTES)) break;
+
+                sink.Write(buffer.getLong(), buffer.getLong(), buffer.getLong());
+            }
+        }
+    }
+
+    // reads more of the file, returns false if there aren't at least minBytes to read
+    private static boolean Fill(FileChannel channel, ByteBuffer buffer, int minBytes) throws IOException {
+        buffer.compact();
+        while (buffer.position() < minBytes) {
+            if (channel.read(buffer) < 0) break;
+        }
+        buffer.flip();
+
+        return buffer.remaining() >= minBytes;
+    }
+}
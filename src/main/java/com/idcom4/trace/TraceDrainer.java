@@ -0,0 +1,88 @@
+package com.idcom4.trace;
+
+import com.idcom4.Context;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Background thread moving the records from the trace buffer to the sinks,
+    so the CPU thread never formats nor writes anything itself.
+    A sink failing is dropped, the others keep going.
+ */
+public final class TraceDrainer {
+
+    private static final long IDLE_NANOS = 1_000_000;
+
+    private final Context context;
+    private final TraceBuffer buffer;
+    private final List<ITraceSink> sinks;
+    private final Thread drainingThread;
+    private volatile boolean closed = false;
+
+    public TraceDrainer(Context context, TraceBuffer buffer, List<ITraceSink> sinks) {
+        this.context = context;
+        this.buffer = buffer;
+        this.sinks = new ArrayList<>(sinks);
+
+        this.drainingThread = new Thread(this::DrainLoop, "trace-drainer");
+        this.drainingThread.setDaemon(true);
+    }
+
+    public void Start() {
+        this.drainingThread.start();
+    }
+
+    // drains what's left in the buffer, then flushes and closes the sinks
+    public void Close() {
+        this.closed = true;
+        LockSupport.unpark(this.drainingThread);
+
+        try {
+            this.drainingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void DrainLoop() {
+        while (!this.closed) {
+            // sleep when idle, and flush what the sinks buffered so far
+            if (this.buffer.Drain(this::Dispatch) == 0) {
+                this.ForEachSink(ITraceSink::Flush);
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+
+        this.buffer.Drain(this::Dispatch);
+        this.ForEachSink(ITraceSink::Close);
+    }
+
+    private void Dispatch(long instruction, long operands, long status) {
+        for (int i = 0; i < this.sinks.size(); i++) {
+            try {
+                this.sinks.get(i).Write(instruction, operands, status);
+            } catch (IOException e) {
+                this.context.logger.errln("Trace sink failed, dropping it: " + e.getMessage());
+                this.sinks.remove(i--);
+            }
+        }
+    }
+
+    private interface ISinkAction {
+        void apply(ITraceSink sink) throws IOException;
+    }
+
+    private void ForEachSink(ISinkAction action) {
+        for (int i = 0; i < this.sinks.size(); i++) {
+            try {
+                action.apply(this.sinks.get(i));
+            } catch (IOException e) {
+                this.context.logger.errln("Trace sink failed, dropping it: " + e.getMessage());
+                this.sinks.remove(i--);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.idcom4.trace;
+
+import com.idcom4.trace.TraceRecords.EKinds;
+
+/*
+    Producer side of the trace, called by the CPU around each instruction:
+    Begin with the fetched instruction, then the values it resolved (if any), and End once it ran.
+ */
+public class TraceRecorder {
+
+    private final TraceBuffer buffer;
+
+    // record being built
+    private long instruction;
+    private long operands;
+    private EKinds kind = EKinds.NONE;
+
+    public TraceRecorder(TraceBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void Begin(short exptr, short opcode, short param0, short param1) {
+        this.instruction = TraceRecords.Instruction(exptr, opcode, param0, param1);
+        this.operands = 0;
+        this.kind = EKinds.NONE;
+    }
+
+    public void Math(short value0, short value1, short result) {
+        this.operands = TraceRecords.Operands(value0, value1, result);
+        this.kind = EKinds.MATH;
+    }
+
+    public void Compare(short value0, short value1, boolean result) {
+        this.operands = TraceRecords.Operands(value0, value1, (short) (result ? 1 : 0));
+        this.kind = EKinds.COMPARE;
+    }
+
+    public void Move(short value, short address) {
+        this.operands = TraceRecords.Operands(value, address, (short) 0);
+        this.kind = EKinds.MOVE;
+    }
+
+    public void End(short flags) {
+        this.buffer.Put(this.instruction, this.operands, TraceRecords.Status(flags, this.kind));
+    }
+}
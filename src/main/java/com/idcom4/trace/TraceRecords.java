@@ -0,0 +1,69 @@
+package com.idcom4.trace;
+
+/*
+    Layout of a trace record, 3 longs (24 bytes) per executed instruction:
+
+    instruction:    | EXPTR (16) | OPCODE (16) | PARAM_0 (16) | PARAM_1 (16) |
+    operands:       | VALUE_0 (16) | VALUE_1 (16) | RESULT (16) | - (16) |
+    status:         | FLAGS (16) | KIND (8) | - (40) |
+
+    The operands depend on the kind of the instruction:
+    - MATH:     value0, value1, primary result
+    - COMPARE:  value0, value1, 1 if true else 0
+    - MOVE:     value, destination address
+    - NONE:     nothing (interrupts, unknown opcodes)
+    The flags are the content of the flags register once the instruction ran.
+ */
+public final class TraceRecords {
+
+    public enum EKinds {
+        NONE,
+        MATH,
+        COMPARE,
+        MOVE;
+
+        private static final EKinds[] VALUES = EKinds.values();
+
+        public static EKinds fromBytes(int code) {
+            return code < VALUES.length ? VALUES[code] : NONE;
+        }
+    }
+
+    public static final int RECORD_LONGS = 3;
+    public static final int RECORD_BYTES = RECORD_LONGS * Long.BYTES;
+
+    private TraceRecords() {}
+
+    public static long Instruction(short exptr, short opcode, short param0, short param1) {
+        return Pack(exptr, opcode, param0, param1);
+    }
+
+    public static long Operands(short value0, short value1, short result) {
+        return Pack(value0, value1, result, (short) 0);
+    }
+
+    public static long Status(short flags, EKinds kind) {
+        return ((long) flags & 0xFFFF) << 48 | (long) kind.ordinal() << 40;
+    }
+
+    public static int ExecutionPointer(long instruction)    { return Field(instruction, 0); }
+    public static int Opcode(long instruction)              { return Field(instruction, 1); }
+    public static int Param0(long instruction)              { return Field(instruction, 2); }
+    public static int Param1(long instruction)              { return Field(instruction, 3); }
+
+    public static int Value0(long operands)                 { return Field(operands, 0); }
+    public static int Value1(long operands)                 { return Field(operands, 1); }
+    public static int Result(long operands)                 { return Field(operands, 2); }
+
+    public static int Flags(long status)                    { return Field(status, 0); }
+    public static EKinds Kind(long status)                  { return EKinds.fromBytes((int) (status >>> 40) & 0xFF); }
+
+    private static long Pack(short a, short b, short c, short d) {
+        return ((long) a & 0xFFFF) << 48 | ((long) b & 0xFFFF) << 32 | ((long) c & 0xFFFF) << 16 | ((long) d & 0xFFFF);
+    }
+
+    // unsigned 16 bits field, 0 being the most significant one
+    private static int Field(long record, int index) {
+        return (int) (record >>> (48 - index * 16)) & 0xFFFF;
+    }
+}
@@ -1,12 +1,24 @@
 package com.idcom4.utils;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
+/*
+    The state files (.mem) hold a byte encoding (the bytes per value), a values count (4 bytes), then the values, big endian.
+    They are read and written through file channels, in chunks of BUFFER_SIZE bytes, never a value at a time.
+ */
 public class FileUtils {
 
+    private static final int HEADER_SIZE = 5;
+    private static final byte SHORT_ENCODING = 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+
     public static String ReadFile(String fileName) {
         try {
             return Files.readString(Paths.get(fileName), Charset.defaultCharset());
@@ -24,18 +36,17 @@ public class FileUtils {
     }
 
     public static byte[] ReadFileBytes(String fileName) {
-        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
-
-            // read byte encoding
-            int byteEncoding = in.readByte();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = ReadHeader(channel, fileName);
+            byte byteEncoding = header.get();
+            if (byteEncoding <= 0)
+                throw new IOException("Invalid byte encoding: " + byteEncoding + " (should be positive)");
 
-            // read data length
-            int length = in.readInt() * byteEncoding;
+            long length = CheckLength(channel, fileName, header.getInt(), byteEncoding);
+            if (length > Integer.MAX_VALUE) throw new IOException("State file too large: " + fileName);
 
-            byte[] data = new byte[length];
-            for (int i = 0; i < length; i++) {
-                data[i] = in.readByte();
-            }
+            byte[] data = new byte[(int) length];
+            ReadFully(channel, ByteBuffer.wrap(data), fileName);
 
             return data;
         }  catch (IOException e) {
@@ -44,54 +55,95 @@ public class FileUtils {
     }
 
     public static void WriteFileBytes(String fileName, byte[] data, int byteEncoding) {
-        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName))) {
-            // write byte encoding
-            out.writeByte(byteEncoding);
-
-            // prefix with data length
-            out.writeInt(data.length / byteEncoding);
-
-            for (byte value : data) {
-                out.writeByte(value);
-            }
+        try (FileChannel channel = OpenForWriting(fileName)) {
+            WriteHeader(channel, (byte) byteEncoding, data.length / byteEncoding);
+            WriteFully(channel, ByteBuffer.wrap(data));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public static short[] ReadFileShorts(String fileName) {
-        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
-            // read byte encoding
-            byte byteEncoding = in.readByte(); // should be 2
-            if (byteEncoding != 2)
-                throw new Exception("Invalid byte encoding: " + byteEncoding + " (should be 2)");
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = ReadHeader(channel, fileName);
+            byte byteEncoding = header.get(); // should be 2
+            if (byteEncoding != SHORT_ENCODING)
+                throw new IOException("Invalid byte encoding: " + byteEncoding + " (should be " + SHORT_ENCODING + ")");
 
-            // read data length
-            int length = in.readInt();
+            int length = header.getInt();
+            CheckLength(channel, fileName, length, SHORT_ENCODING);
 
+            // read in chunks through a direct buffer, its big endian short view copying them to the array at once
             short[] data = new short[length];
-            for (int i = 0; i < length; i++) {
-                data[i] = in.readShort();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            int read = 0;
+            while (read < length) {
+                int count = Math.min(BUFFER_SIZE / SHORT_ENCODING, length - read);
+                buffer.clear().limit(count * SHORT_ENCODING);
+                ReadFully(channel, buffer, fileName);
+
+                buffer.flip().asShortBuffer().get(data, read, count);
+                read += count;
             }
 
             return data;
-        }  catch (Exception e) {
+        }  catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public static void WriteFileShorts(String fileName, short[] data) {
-        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName))) {
-            // write byte encoding
-            out.writeByte(2); // 2 bytes = 1 value
-            // prefix with data length
-            out.writeInt(data.length);
-
-            for (short value : data) {
-                out.writeShort(value);
+        try (FileChannel channel = OpenForWriting(fileName)) {
+            WriteHeader(channel, SHORT_ENCODING, data.length);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            int written = 0;
+            while (written < data.length) {
+                int count = Math.min(BUFFER_SIZE / SHORT_ENCODING, data.length - written);
+                buffer.clear().asShortBuffer().put(data, written, count);
+                buffer.limit(count * SHORT_ENCODING);
+                WriteFully(channel, buffer);
+
+                written += count;
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    // the byte encoding, then the values count
+    private static ByteBuffer ReadHeader(FileChannel channel, String fileName) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ReadFully(channel, header, fileName);
+
+        return header.flip();
+    }
+
+    // the length of the data in bytes, checked against the size of the file
+    private static long CheckLength(FileChannel channel, String fileName, int count, int byteEncoding) throws IOException {
+        if (count < 0) throw new IOException("Invalid values count: " + count + " in " + fileName);
+
+        long length = (long) count * byteEncoding;
+        if (HEADER_SIZE + length > channel.size()) throw new IOException("Truncated state file: " + fileName);
+
+        return length;
+    }
+
+    private static void WriteHeader(FileChannel channel, byte byteEncoding, int count) throws IOException {
+        WriteFully(channel, ByteBuffer.allocate(HEADER_SIZE).put(byteEncoding).putInt(count).flip());
+    }
+
+    private static FileChannel OpenForWriting(String fileName) throws IOException {
+        return FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private static void ReadFully(FileChannel channel, ByteBuffer buffer, String fileName) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new IOException("Truncated state file: " + fileName);
+        }
+    }
+
+    private static void WriteFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
 }
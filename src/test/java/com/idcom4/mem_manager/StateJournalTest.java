@@ -0,0 +1,129 @@
+package com.idcom4.mem_manager;
+
+import com.idcom4.cpu.components.HeapStorage_16;
+import com.idcom4.cpu.components.MemoryBlock_16.DirtyPage;
+import com.idcom4.utils.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Recovery after a crash between the steps of StateJournal.Commit: the journal is written (step 1),
+    then damaged the way a crash would leave it, before the state file is touched.
+ */
+class StateJournalTest {
+
+    private static final int SIZE = 3 * HeapStorage_16.PAGE_SIZE + 10;
+
+    @TempDir
+    Path directory;
+
+    private String stateFile;
+    private short[] initial;
+    private List<DirtyPage> pages;
+
+    @BeforeEach
+    void Setup() {
+        this.stateFile = this.directory.resolve("state.mem").toString();
+
+        this.initial = new short[SIZE];
+        for (int i = 0; i < SIZE; i++) this.initial[i] = (short) i;
+        FileUtils.WriteFileShorts(this.stateFile, this.initial);
+
+        short[] first = new short[HeapStorage_16.PAGE_SIZE];
+        Arrays.fill(first, (short) 0x1111);
+        short[] last = new short[10];
+        Arrays.fill(last, (short) 0x2222);
+        this.pages = List.of(new DirtyPage(1, first), new DirtyPage(3, last));
+    }
+
+    @Test
+    void NoJournal() throws IOException {
+        StateJournal.Recover(this.stateFile);
+
+        assertArrayEquals(this.initial, FileUtils.ReadFileShorts(this.stateFile));
+    }
+
+    @Test
+    void CompleteJournalIsApplied() throws IOException {
+        StateJournal.Write(StateJournal.JournalPath(this.stateFile), SIZE, this.pages);
+
+        StateJournal.Recover(this.stateFile);
+
+        assertArrayEquals(this.Committed(), FileUtils.ReadFileShorts(this.stateFile));
+        assertFalse(Files.exists(StateJournal.JournalPath(this.stateFile)));
+    }
+
+    @Test
+    void CompleteJournalRepairsTornStateFile() throws IOException {
+        StateJournal.Write(StateJournal.JournalPath(this.stateFile), SIZE, this.pages);
+        // the crash happened in the middle of the in place writes, leaving garbage in a page of the journal
+        try (RandomAccessFile file = new RandomAccessFile(this.stateFile, "rw")) {
+            file.seek(5 + HeapStorage_16.PAGE_SIZE * 2L);
+            file.writeShort(0x7777);
+        }
+
+        StateJournal.Recover(this.stateFile);
+
+        assertArrayEquals(this.Committed(), FileUtils.ReadFileShorts(this.stateFile));
+    }
+
+    @Test
+    void TruncatedJournalIsDropped() throws IOException {
+        Path journal = StateJournal.JournalPath(this.stateFile);
+        StateJournal.Write(journal, SIZE, this.pages);
+
+        for (long length : new long[] { 0, 3, 8, Files.size(journal) / 2, Files.size(journal) - 1 }) {
+            StateJournal.Write(journal, SIZE, this.pages);
+            try (RandomAccessFile file = new RandomAccessFile(journal.toFile(), "rw")) {
+                file.setLength(length);
+            }
+
+            StateJournal.Recover(this.stateFile);
+
+            assertArrayEquals(this.initial, FileUtils.ReadFileShorts(this.stateFile), "journal truncated to " + length + " bytes");
+            assertFalse(Files.exists(journal));
+        }
+    }
+
+    @Test
+    void CorruptJournalIsDropped() throws IOException {
+        Path journal = StateJournal.JournalPath(this.stateFile);
+        StateJournal.Write(journal, SIZE, this.pages);
+        long length = Files.size(journal);
+
+        // a value, a page index, and the checksum
+        for (long position : new long[] { 20, 8, length - 1 }) {
+            StateJournal.Write(journal, SIZE, this.pages);
+            try (RandomAccessFile file = new RandomAccessFile(journal.toFile(), "rw")) {
+                file.seek(position);
+                int value = file.read();
+                file.seek(position);
+                file.write(value ^ 0x40);
+            }
+
+            StateJournal.Recover(this.stateFile);
+
+            assertArrayEquals(this.initial, FileUtils.ReadFileShorts(this.stateFile), "journal corrupted at byte " + position);
+            assertFalse(Files.exists(journal));
+        }
+    }
+
+    private short[] Committed() {
+        short[] committed = this.initial.clone();
+        for (DirtyPage page : this.pages) {
+            System.arraycopy(page.content(), 0, committed, page.index() * HeapStorage_16.PAGE_SIZE, page.content().length);
+        }
+
+        return committed;
+    }
+}